@@ -0,0 +1,304 @@
+package org.wallentines.dll;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.Util;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.protocol.game.ClientboundLevelChunkWithLightPacket;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.level.ThreadedLevelLightEngine;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.ProtoChunk;
+import net.minecraft.world.level.chunk.storage.ChunkSerializer;
+import net.minecraft.world.level.chunk.storage.EntityStorage;
+import net.minecraft.world.level.chunk.storage.IOWorker;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.material.Fluid;
+import net.minecraft.world.ticks.SavedTick;
+import net.minecraft.world.phys.AABB;
+import org.jetbrains.annotations.Nullable;
+import org.wallentines.dll.mixin.AccessorChunkMap;
+import org.wallentines.dll.mixin.AccessorEntityStorage;
+import org.wallentines.dll.mixin.AccessorPersistentEntitySectionManager;
+import org.wallentines.dll.mixin.AccessorServerLevel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// Replaces the contents of chunks in a live level with serialized chunk data. Loaded chunks are changed in place and
+// resent to the players who can see them. Chunks which are not loaded are written to the level's storage instead, so
+// they are read back the next time they load. All methods must be called on the server thread.
+public class ChunkRestorer {
+
+    public static CompoundTag saveChunk(ServerLevel level, LevelChunk chunk) {
+        return ChunkSerializer.write(level, chunk);
+    }
+
+    // Saves all non-player entities in the chunk, in the same format as an entity chunk on disk
+    public static CompoundTag saveEntities(ServerLevel level, ChunkPos pos) {
+
+        ListTag entities = new ListTag();
+        for(Entity entity : getEntities(level, pos)) {
+
+            if(entity.getVehicle() != null) continue;
+
+            CompoundTag tag = new CompoundTag();
+            if(entity.saveAsPassenger(tag)) entities.add(tag);
+        }
+
+        CompoundTag out = new CompoundTag();
+        out.put("Entities", entities);
+        out.putIntArray("Position", new int[] { pos.x, pos.z });
+        NbtUtils.addCurrentDataVersion(out);
+
+        return out;
+    }
+
+    @Nullable
+    public static LevelChunk getLoadedChunk(ServerLevel level, ChunkPos pos) {
+
+        ChunkHolder holder = ((AccessorChunkMap) level.getChunkSource().chunkMap).callGetVisibleChunkIfPresent(pos.toLong());
+        if(holder == null) return null;
+
+        LevelChunk chunk = holder.getFullChunk();
+        if(chunk != null) return chunk;
+
+        // The chunk is partway through loading, so it cannot be written to storage safely. Finish loading it instead
+        return (LevelChunk) level.getChunk(pos.x, pos.z, ChunkStatus.FULL, true);
+    }
+
+    public static void restoreChunk(ServerLevel level, ChunkPos pos, CompoundTag chunkTag, @Nullable CompoundTag entityTag) {
+
+        LevelChunk live = getLoadedChunk(level, pos);
+        if(live == null) {
+            writeToStorage(level, pos, chunkTag, entityTag);
+            return;
+        }
+
+        ChunkMap chunkMap = level.getChunkSource().chunkMap;
+        ProtoChunk read = ChunkSerializer.read(level, ((AccessorChunkMap) chunkMap).getPoiManager(), pos, chunkTag);
+
+        // The restored contents may differ from what is in storage, so the chunk must be saved again
+        if(level instanceof DynamicLevelContext.DynamicLevel dl) {
+            dl.markChunkUnsaved(pos.toLong());
+        }
+
+        // Swap in the restored sections, which carry both blocks and biomes
+        LevelChunkSection[] sections = live.getSections();
+        LevelChunkSection[] previous = sections.clone();
+        LevelChunkSection[] restored = read.getSections();
+        System.arraycopy(restored, 0, sections, 0, Math.min(sections.length, restored.length));
+
+        for(BlockPos bePos : new ArrayList<>(live.getBlockEntities().keySet())) {
+            live.removeBlockEntity(bePos);
+        }
+        ListTag blockEntities = chunkTag.getList("block_entities", Tag.TAG_COMPOUND);
+        for(int i = 0 ; i < blockEntities.size() ; i++) {
+
+            CompoundTag beTag = blockEntities.getCompound(i);
+            BlockPos bePos = BlockEntity.getPosFromTag(beTag);
+            BlockEntity be = BlockEntity.loadStatic(bePos, live.getBlockState(bePos), beTag);
+            if(be != null) live.addAndRegisterBlockEntity(be);
+        }
+
+        restoreTicks(level, pos, chunkTag);
+
+        Heightmap.primeHeightmaps(live, ChunkStatus.FULL.heightmapsAfter());
+
+        if(entityTag != null) {
+            restoreEntities(level, pos, entityTag);
+        }
+
+        live.setUnsaved(true);
+
+        // Light is recomputed wherever a block changed, and the chunk is only sent again once that has finished
+        ThreadedLevelLightEngine lightEngine = level.getChunkSource().getLightEngine();
+        for(int i = 0 ; i < sections.length ; i++) {
+            queueLightChecks(level, lightEngine, pos, i, previous[i], sections[i]);
+        }
+        lightEngine.lightChunk(live, false).thenRunAsync(() -> resendChunk(level, live), level.getServer());
+        lightEngine.tryScheduleUpdate();
+    }
+
+    private static void queueLightChecks(ServerLevel level, ThreadedLevelLightEngine lightEngine, ChunkPos pos, int index, LevelChunkSection before, LevelChunkSection after) {
+
+        if(before == after || before.hasOnlyAir() && after.hasOnlyAir()) return;
+
+        int sectionY = level.getSectionYFromSectionIndex(index);
+        if(before.hasOnlyAir() != after.hasOnlyAir()) {
+            lightEngine.updateSectionStatus(SectionPos.of(pos, sectionY), after.hasOnlyAir());
+        }
+
+        int minY = SectionPos.sectionToBlockCoord(sectionY);
+        for(int y = 0 ; y < 16 ; y++) {
+            for(int z = 0 ; z < 16 ; z++) {
+                for(int x = 0 ; x < 16 ; x++) {
+                    if(before.getBlockState(x, y, z) != after.getBlockState(x, y, z)) {
+                        lightEngine.checkBlock(new BlockPos(pos.getMinBlockX() + x, minY + y, pos.getMinBlockZ() + z));
+                    }
+                }
+            }
+        }
+    }
+
+    // Replaces the block and fluid ticks scheduled in the chunk with the ones saved in the tag. Saved delays are
+    // relative, so they are scheduled from the level's current time
+    public static void restoreTicks(ServerLevel level, ChunkPos pos, CompoundTag chunkTag) {
+
+        BoundingBox box = new BoundingBox(pos.getMinBlockX(), level.getMinBuildHeight(), pos.getMinBlockZ(), pos.getMaxBlockX(), level.getMaxBuildHeight() - 1, pos.getMaxBlockZ());
+        level.getBlockTicks().clearArea(box);
+        level.getFluidTicks().clearArea(box);
+
+        for(SavedTick<Block> tick : SavedTick.loadTickList(chunkTag.getList("block_ticks", Tag.TAG_COMPOUND), id -> BuiltInRegistries.BLOCK.getOptional(ResourceLocation.tryParse(id)), pos)) {
+            level.scheduleTick(tick.pos(), tick.type(), tick.delay(), tick.priority());
+        }
+        for(SavedTick<Fluid> tick : SavedTick.loadTickList(chunkTag.getList("fluid_ticks", Tag.TAG_COMPOUND), id -> BuiltInRegistries.FLUID.getOptional(ResourceLocation.tryParse(id)), pos)) {
+            level.scheduleTick(tick.pos(), tick.type(), tick.delay(), tick.priority());
+        }
+    }
+
+    public static void restoreEntities(ServerLevel level, ChunkPos pos, CompoundTag entityTag) {
+
+        for(Entity entity : getEntities(level, pos)) {
+            if(entity.getVehicle() == null) entity.discard();
+        }
+
+        ListTag entities = entityTag.getList("Entities", Tag.TAG_COMPOUND);
+        for(int i = 0 ; i < entities.size() ; i++) {
+
+            Entity entity = EntityType.loadEntityRecursive(entities.getCompound(i), level, e -> e);
+            if(entity != null) level.tryAddFreshEntityWithPassengers(entity);
+        }
+    }
+
+    public static void resendChunk(ServerLevel level, LevelChunk chunk) {
+
+        List<ServerPlayer> players = level.getChunkSource().chunkMap.getPlayers(chunk.getPos(), false);
+        if(players.isEmpty()) return;
+
+        ClientboundLevelChunkWithLightPacket packet = new ClientboundLevelChunkWithLightPacket(chunk, level.getLightEngine(), null, null, true);
+        for(ServerPlayer player : players) {
+            player.connection.send(packet);
+        }
+    }
+
+    // Restores each chunk to its saved version, read from the given template folder if there is one and from the
+    // level's own storage otherwise. Chunks which were never saved are left as they are. The returned future
+    // completes on the server thread with the positions of the chunks which were restored
+    public static CompletableFuture<LongSet> resetChunks(ServerLevel level, long[] chunks, @Nullable Path templateFolder) {
+
+        MinecraftServer server = level.getServer();
+        LongSet restored = new LongOpenHashSet();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        if(templateFolder != null) {
+
+            futures.add(CompletableFuture.supplyAsync(() -> {
+
+                TemplateChunkReader regions = TemplateChunkReader.acquireShared(templateFolder.resolve("region"));
+                TemplateChunkReader entities = TemplateChunkReader.acquireShared(templateFolder.resolve("entities"));
+
+                CompoundTag[][] out = new CompoundTag[chunks.length][];
+                try {
+                    for(int i = 0 ; i < chunks.length ; i++) {
+                        ChunkPos pos = new ChunkPos(chunks[i]);
+                        out[i] = new CompoundTag[] { regions.read(pos), entities.read(pos) };
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } finally {
+                    regions.release();
+                    entities.release();
+                }
+                return out;
+
+            }, Util.ioPool()).thenAcceptAsync(tags -> {
+
+                for(int i = 0 ; i < chunks.length ; i++) {
+                    if(resetChunk(level, new ChunkPos(chunks[i]), tags[i][0], tags[i][1])) restored.add(chunks[i]);
+                }
+
+            }, server));
+
+        } else {
+
+            IOWorker entityWorker = getEntityWorker(level);
+            for(long chunk : chunks) {
+
+                ChunkPos pos = new ChunkPos(chunk);
+                CompletableFuture<Optional<CompoundTag>> entities = entityWorker == null ? CompletableFuture.completedFuture(Optional.empty()) : entityWorker.loadAsync(pos);
+
+                futures.add(level.getChunkSource().chunkMap.read(pos).thenAcceptBothAsync(entities, (chunkTag, entityTag) -> {
+                    if(resetChunk(level, pos, chunkTag.orElse(null), entityTag.orElse(null))) restored.add(chunk);
+                }, server));
+            }
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApplyAsync(v -> restored, server);
+    }
+
+    private static boolean resetChunk(ServerLevel level, ChunkPos pos, @Nullable CompoundTag chunkTag, @Nullable CompoundTag entityTag) {
+
+        if(chunkTag == null) return false;
+
+        // A chunk without saved entities had none, so its current entities are removed
+        if(entityTag == null) {
+            entityTag = new CompoundTag();
+            entityTag.put("Entities", new ListTag());
+        }
+
+        restoreChunk(level, pos, chunkTag, entityTag);
+        return true;
+    }
+
+    @Nullable
+    private static IOWorker getEntityWorker(ServerLevel level) {
+
+        if(((AccessorPersistentEntitySectionManager) ((AccessorServerLevel) level).getEntityManager()).getPermanentStorage() instanceof EntityStorage storage) {
+            return ((AccessorEntityStorage) storage).getWorker();
+        }
+        return null;
+    }
+
+    private static void writeToStorage(ServerLevel level, ChunkPos pos, CompoundTag chunkTag, @Nullable CompoundTag entityTag) {
+
+        level.getChunkSource().chunkMap.write(pos, chunkTag);
+
+        IOWorker entityWorker = getEntityWorker(level);
+        if(entityTag != null && entityWorker != null) {
+            entityWorker.store(pos, entityTag);
+        }
+    }
+
+    private static List<Entity> getEntities(ServerLevel level, ChunkPos pos) {
+
+        AABB bounds = new AABB(pos.getMinBlockX(), level.getMinBuildHeight(), pos.getMinBlockZ(), pos.getMaxBlockX() + 1, level.getMaxBuildHeight(), pos.getMaxBlockZ() + 1);
+        return level.getEntities((Entity) null, bounds, entity -> !(entity instanceof Player) && entity.chunkPosition().equals(pos));
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.wallentines.dll;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+// A map which replaces its contents with a new immutable snapshot on every write. Reads and iteration never lock,
+// and an iterator always walks the snapshot from the moment it was created, so levels can be added or removed from
+// any thread while the server thread iterates.
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+
+    private volatile Map<K, V> snapshot;
+
+    public CopyOnWriteMap() {
+        this.snapshot = Collections.emptyMap();
+    }
+
+    public CopyOnWriteMap(Map<K, V> initial) {
+        this.snapshot = Collections.unmodifiableMap(new LinkedHashMap<>(initial));
+    }
+
+    public Map<K, V> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return snapshot.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return snapshot.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+
+        Map<K, V> copy = new LinkedHashMap<>(snapshot);
+        V out = copy.put(key, value);
+        snapshot = Collections.unmodifiableMap(copy);
+
+        return out;
+    }
+
+    @Override
+    public synchronized void putAll(@NotNull Map<? extends K, ? extends V> map) {
+
+        Map<K, V> copy = new LinkedHashMap<>(snapshot);
+        copy.putAll(map);
+        snapshot = Collections.unmodifiableMap(copy);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+
+        if(!snapshot.containsKey(key)) return null;
+
+        Map<K, V> copy = new LinkedHashMap<>(snapshot);
+        V out = copy.remove(key);
+        snapshot = Collections.unmodifiableMap(copy);
+
+        return out;
+    }
+
+    @Override
+    public synchronized void clear() {
+        snapshot = Collections.emptyMap();
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+
+                Iterator<Entry<K, V>> it = snapshot.entrySet().iterator();
+                return new Iterator<>() {
+
+                    private Entry<K, V> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        return last = it.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if(last == null) throw new IllegalStateException();
+                        CopyOnWriteMap.this.remove(last.getKey());
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return snapshot.size();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,78 @@
+package org.wallentines.dll;
+
+import com.google.common.collect.ImmutableMap;
+import net.minecraft.core.LayeredRegistryAccess;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.RegistryOps;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.RegistryLayer;
+import net.minecraft.world.level.dimension.LevelStem;
+import net.minecraft.world.level.levelgen.WorldDimensions;
+import net.minecraft.world.level.levelgen.presets.WorldPreset;
+import org.wallentines.dll.mixin.AccessorWorldPreset;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Contexts created from the same dimension stems share one baked dimension registry and the server registry access
+// derived from it. Only the WorldData is created per world. Stems are compared by their encoded form, since chunk
+// generators do not implement equality, and only the most recently used entries are kept.
+public class DimensionRegistryCache {
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static final Map<Map<ResourceKey<LevelStem>, Tag>, Entry> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Map<ResourceKey<LevelStem>, Tag>, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static LayeredRegistryAccess<RegistryLayer> source;
+
+    public static synchronized Entry get(LayeredRegistryAccess<RegistryLayer> serverAccess, WorldPreset preset) {
+
+        // Cached entries are derived from the server's registries, so they are invalid once those are replaced
+        if(source != serverAccess) {
+            CACHE.clear();
+            source = serverAccess;
+        }
+
+        Map<ResourceKey<LevelStem>, Tag> key = createKey(serverAccess, ((AccessorWorldPreset) preset).getDimensions());
+        if(key == null) return bake(serverAccess, preset);
+
+        return CACHE.computeIfAbsent(key, k -> bake(serverAccess, preset));
+    }
+
+    public static synchronized void clear() {
+        CACHE.clear();
+        source = null;
+    }
+
+    private static Entry bake(LayeredRegistryAccess<RegistryLayer> serverAccess, WorldPreset preset) {
+
+        WorldDimensions worldDimensions = preset.createWorldDimensions();
+        WorldDimensions.Complete complete = worldDimensions.bake(worldDimensions.dimensions());
+
+        return new Entry(complete, serverAccess.replaceFrom(RegistryLayer.DIMENSIONS, complete.dimensionsRegistryAccess()));
+    }
+
+    // Returns null if any stem cannot be encoded, in which case the registry is baked without being cached
+    private static Map<ResourceKey<LevelStem>, Tag> createKey(LayeredRegistryAccess<RegistryLayer> serverAccess, Map<ResourceKey<LevelStem>, LevelStem> stems) {
+
+        RegistryOps<Tag> ops = RegistryOps.create(NbtOps.INSTANCE, serverAccess.compositeAccess());
+        ImmutableMap.Builder<ResourceKey<LevelStem>, Tag> out = ImmutableMap.builder();
+
+        for(Map.Entry<ResourceKey<LevelStem>, LevelStem> entry : stems.entrySet()) {
+            Optional<Tag> encoded = LevelStem.CODEC.encodeStart(ops, entry.getValue()).result();
+            if(encoded.isEmpty()) return null;
+            out.put(entry.getKey(), encoded.get());
+        }
+
+        return out.build();
+    }
+
+    public record Entry(WorldDimensions.Complete dimensions, LayeredRegistryAccess<RegistryLayer> registries) { }
+
+}
@@ -9,6 +9,7 @@ public interface DynamicLevelCallback {
     void onLoaded(ServerLevel level);
     default void onFail() { }
     default void onProgress(float percent) { }
+    default void onQueued(int position) { }
 
 
     static DynamicLevelCallback of(Consumer<ServerLevel> loaded, Runnable failed) {
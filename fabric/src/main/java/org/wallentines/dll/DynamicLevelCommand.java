@@ -0,0 +1,119 @@
+package org.wallentines.dll;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.context.CommandContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+import java.util.Map;
+
+public class DynamicLevelCommand {
+
+    public static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+
+        dispatcher.register(Commands.literal("dll")
+            .requires(src -> src.hasPermission(2))
+            .then(Commands.literal("stats")
+                .executes(DynamicLevelCommand::stats)
+            )
+            .then(Commands.literal("timings")
+                .executes(DynamicLevelCommand::timings)
+            )
+            .then(Commands.literal("leaks")
+                .executes(DynamicLevelCommand::leaks)
+            )
+            .then(Commands.literal("cache")
+                .executes(DynamicLevelCommand::cache)
+            )
+        );
+    }
+
+    private static int stats(CommandContext<CommandSourceStack> ctx) {
+
+        CommandSourceStack src = ctx.getSource();
+        int count = 0;
+
+        for(DynamicLevelStorage storage : DynamicLevelStorage.getStorages()) {
+            for(DynamicLevelContext context : storage.getLoadedContexts()) {
+                for(ResourceKey<Level> key : context.getLevelKeys()) {
+
+                    if(!(context.getLevel(key) instanceof DynamicLevelContext.DynamicLevel level)) continue;
+
+                    LevelMetrics metrics = level.getMetrics();
+                    src.sendSuccess(Component.literal(String.format("%s: p50 %.2fms, p95 %.2fms, p99 %.2fms | %d chunks, %d entities, %d block entities, %d pending I/O%s",
+                            key.location(),
+                            metrics.getTickTimePercentile(50) / 1.0E6,
+                            metrics.getTickTimePercentile(95) / 1.0E6,
+                            metrics.getTickTimePercentile(99) / 1.0E6,
+                            metrics.getLoadedChunks(),
+                            metrics.getTickingEntities(),
+                            metrics.getBlockEntityTickers(),
+                            metrics.getPendingChunkIO(),
+                            context.isHibernating() ? " (hibernating)" : "")), false);
+                    count++;
+                }
+            }
+        }
+
+        if(count == 0) {
+            src.sendSuccess(Component.literal("No dynamic levels are loaded"), false);
+        }
+
+        return count;
+    }
+
+    private static int timings(CommandContext<CommandSourceStack> ctx) {
+
+        CommandSourceStack src = ctx.getSource();
+        Map<String, LoadPhases.Histogram> histograms = LoadPhases.getHistograms();
+
+        for(Map.Entry<String, LoadPhases.Histogram> entry : histograms.entrySet()) {
+
+            LoadPhases.Histogram histogram = entry.getValue();
+            src.sendSuccess(Component.literal(String.format("%s: %d samples, avg %.2fms, p50 <%dms, p99 <%dms, max %.2fms",
+                    entry.getKey(),
+                    histogram.getCount(),
+                    histogram.getAverageMillis(),
+                    histogram.getPercentileLimit(50),
+                    histogram.getPercentileLimit(99),
+                    histogram.getMaxMillis())), false);
+        }
+
+        if(histograms.isEmpty()) {
+            src.sendSuccess(Component.literal("No dynamic level operations have been timed yet"), false);
+        }
+
+        return histograms.size();
+    }
+
+    private static int leaks(CommandContext<CommandSourceStack> ctx) {
+
+        int leaks = LeakDetector.checkNow(ctx.getSource().getServer());
+        ctx.getSource().sendSuccess(Component.literal(leaks == 0
+                ? "No unloaded dynamic levels are still reachable"
+                : leaks + " unloaded dynamic levels or contexts are still reachable. See the server log for details"), false);
+
+        return leaks;
+    }
+
+    private static int cache(CommandContext<CommandSourceStack> ctx) {
+
+        long hits = TemplateChunkCache.getHits();
+        long misses = TemplateChunkCache.getMisses();
+
+        ctx.getSource().sendSuccess(Component.literal(String.format("Template chunk cache: %d chunks, %.1f/%.1fMB | %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                TemplateChunkCache.getChunkCount(),
+                TemplateChunkCache.getSize() / 1048576.0,
+                TemplateChunkCache.getMaxSize() / 1048576.0,
+                hits,
+                misses,
+                hits + misses == 0 ? 0.0 : hits * 100.0 / (hits + misses),
+                TemplateChunkCache.getEvictions())), false);
+
+        return TemplateChunkCache.getChunkCount();
+    }
+
+}
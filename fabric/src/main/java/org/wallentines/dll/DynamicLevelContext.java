@@ -4,6 +4,11 @@ import com.google.common.collect.ImmutableList;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.logging.LogUtils;
 import com.mojang.serialization.*;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import net.minecraft.Util;
 import net.minecraft.core.*;
 import net.minecraft.core.registries.Registries;
@@ -16,65 +21,91 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.RegistryLayer;
 import net.minecraft.server.WorldLoader;
 import net.minecraft.server.WorldStem;
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ChunkMap;
 import net.minecraft.server.level.ServerChunkCache;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.level.TicketType;
 import net.minecraft.server.level.progress.ChunkProgressListener;
 import net.minecraft.tags.TagKey;
+import net.minecraft.util.Mth;
+import net.minecraft.util.ProgressListener;
 import net.minecraft.util.Unit;
 import net.minecraft.world.entity.ai.village.VillageSiege;
 import net.minecraft.world.entity.npc.CatSpawner;
 import net.minecraft.world.entity.npc.WanderingTraderSpawner;
 import net.minecraft.world.level.*;
 import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.border.BorderChangeListener;
 import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.dimension.DimensionType;
 import net.minecraft.world.level.dimension.LevelStem;
 import net.minecraft.world.level.levelgen.*;
 import net.minecraft.world.level.levelgen.presets.WorldPreset;
 import net.minecraft.world.level.levelgen.structure.Structure;
+import net.minecraft.world.level.material.Fluid;
 import net.minecraft.world.level.saveddata.maps.MapIndex;
 import net.minecraft.world.level.saveddata.maps.MapItemSavedData;
 import net.minecraft.world.level.storage.*;
+import net.minecraft.world.ticks.TickPriority;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
+import org.wallentines.dll.mixin.AccessorChunkMap;
+import org.wallentines.dll.mixin.AccessorLevelStorageAccess;
 import org.wallentines.dll.mixin.AccessorMinecraftServer;
 import org.wallentines.dll.mixin.AccessorServerLevel;
-import org.wallentines.midnightcore.fabric.event.server.ServerStopEvent;
-import org.wallentines.midnightlib.event.Event;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 public class DynamicLevelContext {
 
     private static final Logger LOGGER = LogUtils.getLogger();
 
     private final MinecraftServer server;
-    private final DynamicLevelStorage.DynamicLevelStorageAccess storageAccess;
+    private final DynamicLevelStorage storage;
+    private DynamicLevelStorage.DynamicLevelStorageAccess storageAccess;
     private final ChunkProgressListener chunkProgressListener;
     private final WorldConfig config;
 
-    private final Map<ResourceKey<Level>, DynamicLevel> levels = new HashMap<>();
+    private final Map<ResourceKey<Level>, DynamicLevel> levels = new CopyOnWriteMap<>();
+    private final List<PregenTask> pregenTasks = new CopyOnWriteArrayList<>();
+    private final Map<ResourceKey<Level>, BorderChangeListener> borderDelegates = new ConcurrentHashMap<>();
     private WorldStem worldStem;
 
+    private volatile long lastActiveTick;
+    private volatile boolean hibernating;
+    private volatile TickPolicy tickPolicy;
+    private CompletableFuture<Void> pendingUnload = CompletableFuture.completedFuture(null);
+    private volatile boolean unloading;
+    private volatile boolean released;
+
     public DynamicLevelContext(MinecraftServer server, DynamicLevelStorage storage, WorldConfig config) {
 
         this.server = server;
+        this.storage = storage;
         this.config = config;
+        this.tickPolicy = config.getTickPolicy();
 
-        Event.register(ServerStopEvent.class, this, ev -> {
-            if(config.autoDelete()) {
-                unloadAndDelete();
-            } else {
-                unload(config.autoSave());
-            }
-        });
+        // The storage unloads its contexts when the server stops, without keeping them reachable
+        storage.registerContext(this);
 
         try {
             this.storageAccess = storage.createAccess(config.getLevelName(), this);
@@ -92,10 +123,14 @@ public class DynamicLevelContext {
 
     public void initialize(Runnable onSuccess, Runnable onFail) {
 
-        ExecutorService exe = Util.backgroundExecutor();
-        exe.submit(() -> {
+        storage.getExecutor().execute(() -> {
 
             try {
+                // A context which was unloaded needs to reopen its storage
+                if(storageAccess == null) {
+                    storageAccess = storage.createAccess(config.getLevelName(), this);
+                }
+
                 // Get DataPack config from server
                 WorldDataConfiguration worldDataConfiguration = server.getWorldData().getDataConfiguration();
 
@@ -107,20 +142,43 @@ public class DynamicLevelContext {
                         acc.getRegistries().getAccessForLoading(RegistryLayer.DIMENSIONS),
                         acc.getRegistries().compositeAccess()
                 );
-                WorldLoader.DataLoadOutput<WorldData> dl = loadLevelData(dlc);
-
                 LayeredRegistryAccess<RegistryLayer> serverAccess = acc.getRegistries();
-                LayeredRegistryAccess<RegistryLayer> dimensions = serverAccess.replaceFrom(RegistryLayer.DIMENSIONS, dl.finalDimensions());
+                LayeredRegistryAccess<RegistryLayer> dimensions = null;
+                WorldData worldData = null;
+
+                // Try to load level.dat, unless requested not to
+                if(!config.recreateLevelData()) {
+
+                    LoadPhases.Timer dataTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "level_data");
+                    WorldLoader.DataLoadOutput<WorldData> data = loadExistingData(config.getWorldPreset().createWorldDimensions(), dlc.datapackWorldgen(), dlc.dataConfiguration(), storageAccess);
+                    dataTimer.end();
+
+                    if(data != null) {
+                        LoadPhases.Timer registryTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "registries");
+                        worldData = data.cookie();
+                        dimensions = serverAccess.replaceFrom(RegistryLayer.DIMENSIONS, data.finalDimensions());
+                        registryTimer.end();
+                    }
+                }
+
+                // Otherwise, create a new level.dat using the dimension registry shared by all worlds with these dimensions
+                if(worldData == null) {
+                    LoadPhases.Timer registryTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "registries");
+                    DimensionRegistryCache.Entry cached = DimensionRegistryCache.get(serverAccess, config.getWorldPreset());
+                    worldData = createLevelData(dlc, cached.dimensions());
+                    dimensions = cached.registries();
+                    registryTimer.end();
+                }
 
                 this.worldStem = new WorldStem(
                         acc.getReloadableResources().resourceManager(),
                         acc.getReloadableResources().managers(),
                         dimensions,
-                        dl.cookie()
+                        worldData
                 );
 
                 if(config.autoSave()) {
-                    storageAccess.saveDataTag(worldStem.registries().compositeAccess(), worldStem.worldData());
+                    saveLevelData(storageAccess, worldStem);
                 }
 
                 server.submit(onSuccess);
@@ -151,9 +209,76 @@ public class DynamicLevelContext {
 
     public void loadAllDimensions(DynamicLevelCallback callback) {
 
-        // Initialize the level data if not done already
-        if(worldStem == null) {
-            initialize(() -> loadAllDimensions(callback), callback::onFail);
+        loadAllDimensions(callback::onProgress, callback::onQueued).whenCompleteAsync((level, ex) -> {
+            if(ex == null) {
+                callback.onLoaded(level);
+            } else {
+                callback.onFail();
+            }
+        }, server);
+    }
+
+    public CompletableFuture<ServerLevel> loadAllDimensions() {
+
+        return loadAllDimensions((Float progress) -> { });
+    }
+
+    public CompletableFuture<ServerLevel> loadAllDimensions(long timeout, TimeUnit unit) {
+
+        return loadAllDimensions().orTimeout(timeout, unit);
+    }
+
+    public CompletableFuture<ServerLevel> loadAllDimensions(Consumer<Float> onProgress) {
+
+        return loadAllDimensions(onProgress, position -> { });
+    }
+
+    // The returned future completes on the server thread with the root level. Cancelling it, or failing it through
+    // a timeout, stops pregeneration and frees the context. Loads wait in the storage's load queue before starting
+    public CompletableFuture<ServerLevel> loadAllDimensions(Consumer<Float> onProgress, IntConsumer onQueued) {
+
+        CompletableFuture<ServerLevel> result = new CompletableFuture<>();
+        LoadPhases.Timer queueTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "queued");
+        LoadPhases.Timer totalTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "total");
+
+        result.whenComplete((level, ex) -> {
+            if(ex != null) {
+                server.execute(this::abortLoading);
+            } else {
+                totalTimer.end();
+            }
+        });
+
+        storage.getLoadQueue().submit(server, config.getLoadPriority(), result, () -> {
+
+            queueTimer.end();
+
+            Runnable start = () -> {
+                // Initialize the level data if not done already
+                if(worldStem == null) {
+                    initialize(() -> startLoading(result, onProgress), () -> result.completeExceptionally(new IllegalStateException("Unable to initialize dynamic level!")));
+                } else {
+                    startLoading(result, onProgress);
+                }
+            };
+
+            // Wait for an asynchronous unload to release the level data first
+            if(unloading) {
+                pendingUnload.whenCompleteAsync((v, ex) -> start.run(), server);
+            } else {
+                start.run();
+            }
+
+        }, onQueued);
+
+        return result;
+    }
+
+    private void startLoading(CompletableFuture<ServerLevel> result, Consumer<Float> onProgress) {
+
+        // The load was cancelled while the level data was initializing
+        if(result.isDone()) {
+            abortLoading();
             return;
         }
 
@@ -161,8 +286,10 @@ public class DynamicLevelContext {
         WorldData worldData = worldStem.worldData();
 
         ServerLevel rootLevel = null;
+        Map<ResourceKey<LevelStem>, DynamicLevel> stemLevels = new HashMap<>();
+
+        LoadPhases.Timer createTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "create_levels");
 
-        boolean debug = worldData.isDebugWorld();
         long seed = worldData.worldGenOptions().seed();
         long seedHash = BiomeManager.obfuscateSeed(seed);
 
@@ -181,110 +308,281 @@ public class DynamicLevelContext {
 
             // These should be present in all worlds. GameRules can still disable spawning
             List<CustomSpawner> spawners = ImmutableList.of(new PhantomSpawner(), new PatrolSpawner(), new CatSpawner(), new VillageSiege(), new WanderingTraderSpawner(serverLevelData));
-            DynamicLevel level = new DynamicLevel(Util.backgroundExecutor(), serverLevelData, dimensionKey, stem, chunkProgressListener, seedHash, spawners, root);
+            DynamicLevel level = new DynamicLevel(storage.getWorldgenExecutor(), serverLevelData, dimensionKey, stem, chunkProgressListener, seedHash, spawners, root);
 
-            levels.put(dimensionKey, level);
-            ((AccessorMinecraftServer) server).getLevels().put(dimensionKey, level);
+            attachDimension(dimensionKey, level);
+            stemLevels.put(stemKey, level);
 
             if(root) rootLevel = level;
 
         }
 
+        createTimer.end();
         chunkProgressListener.start();
 
         if(rootLevel == null) {
-            callback.onFail();
+            result.completeExceptionally(new IllegalStateException("Unable to find a root dimension for dynamic level!"));
             return;
         }
 
         final ServerLevel finalRootLevel = rootLevel;
 
-        Util.backgroundExecutor().submit(() -> {
+        storage.getExecutor().execute(() -> {
 
             try {
 
-                // Generate chunks for root level
-                ServerLevelData serverLevelData = ((AccessorServerLevel) finalRootLevel).getServerLevelData();
+                LoadPhases.Timer pregenTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "pregen");
+
+                // Generate chunks for all dimensions at once
+                List<PregenTask> tasks = new ArrayList<>();
+                for(Map.Entry<ResourceKey<LevelStem>, DynamicLevel> entry : stemLevels.entrySet()) {
+
+                    PregenTask task = createPregenTask(entry.getKey(), entry.getValue(), finalRootLevel);
+                    if(task != null) tasks.add(task);
+                }
+                pregenTasks.addAll(tasks);
+
+                // The load may have been cancelled before abortLoading could see these tasks
+                if(result.isDone()) {
+                    tasks.forEach(PregenTask::cancel);
+                    return;
+                }
 
-                ServerChunkCache serverChunkCache = finalRootLevel.getChunkSource();
-                serverChunkCache.getLightEngine().setTaskPerBatch(500);
+                int total = 0;
+                for(PregenTask task : tasks) {
+                    total += task.getTotal();
+                }
 
-                BlockPos spawn = new BlockPos(serverLevelData.getXSpawn(), serverLevelData.getYSpawn(), serverLevelData.getZSpawn());
-                finalRootLevel.setDefaultSpawnPos(spawn, serverLevelData.getSpawnAngle());
-                chunkProgressListener.updateSpawnPos(new ChunkPos(spawn));
+                final float finalTotal = total;
+                AtomicInteger generated = new AtomicInteger();
+                AtomicInteger lastPercent = new AtomicInteger();
 
-                int pregenArea = (2 * config.getPregenRadius()) + 1;
-                pregenArea *= pregenArea;
+                Runnable onChunkGenerated = () -> {
 
-                while (serverChunkCache.getTickingGenerated() < pregenArea) {
-                    Thread.yield();
-                    LockSupport.parkNanos("waiting for tasks", 250000000L); // Quarter Second
+                    // Only push progress when another whole percent has been generated across all dimensions
+                    float progress = Math.min(1.0f, generated.incrementAndGet() / finalTotal);
+                    int percent = (int) (progress * 100.0f);
+                    if(lastPercent.getAndAccumulate(percent, Math::max) >= percent) return;
 
-                    float progress = Math.min(1.0f, (float) serverChunkCache.getTickingGenerated() / (float) pregenArea);
                     try {
-                        callback.onProgress(progress);
+                        onProgress.accept(progress);
                     } catch (Exception ex) {
                         LOGGER.warn("An exception occurred while sending a dynamic dimension load progress callback!");
                         ex.printStackTrace();
                     }
-                }
+                };
+
+                CompletableFuture.allOf(tasks.stream().map(task -> task.start(onChunkGenerated)).toArray(CompletableFuture[]::new))
+                        .thenRunAsync(() -> {
+                            pregenTimer.end();
+                            finishLoading(finalRootLevel, result);
+                        }, storage.getExecutor()).exceptionally(ex -> {
 
-                if (!serverLevelData.isInitialized()) {
-                    AccessorMinecraftServer.callSetInitialSpawn(finalRootLevel, serverLevelData, config.hasBonusChest(), debug);
-                    if (debug) {
-                        ((AccessorMinecraftServer) server).callSetupDebugLevel(worldData);
+                    if(!result.isDone()) {
+                        LOGGER.warn("An exception occurred while loading a dynamic dimension!");
+                        ex.printStackTrace();
+                        result.completeExceptionally(ex);
                     }
-                    serverLevelData.setInitialized(true);
-                }
-                addWorldBorderListener(finalRootLevel);
+                    return null;
+                });
+
+            } catch (Exception ex) {
 
-                for(ServerLevel other : levels.values()) {
+                LOGGER.warn("An exception occurred while loading a dynamic dimension!");
+                ex.printStackTrace();
+                result.completeExceptionally(ex);
+            }
+        });
 
-                    if(other == finalRootLevel) continue;
+    }
 
-                    WorldBorder wb = finalRootLevel.getWorldBorder();
-                    wb.addListener(new BorderChangeListener.DelegateBorderChangeListener(other.getWorldBorder()));
-                }
+    @Nullable
+    private PregenTask createPregenTask(ResourceKey<LevelStem> stemKey, DynamicLevel level, ServerLevel rootLevel) {
 
-                // Load Chunks
-                ForcedChunksSavedData chunksSavedData = finalRootLevel.getDataStorage().get(ForcedChunksSavedData::load, ForcedChunksSavedData.FILE_ID);
+        ServerLevelData serverLevelData = ((AccessorServerLevel) rootLevel).getServerLevelData();
+        BlockPos spawn = new BlockPos(serverLevelData.getXSpawn(), serverLevelData.getYSpawn(), serverLevelData.getZSpawn());
 
-                if (chunksSavedData != null) {
-                    for (long l : chunksSavedData.getChunks()) {
-                        ChunkPos pos = new ChunkPos(l);
-                        serverChunkCache.updateChunkForced(pos, true);
-                    }
-                }
+        ServerChunkCache serverChunkCache = level.getChunkSource();
+        int radius = config.getPregenRadius(stemKey);
 
-                serverChunkCache.getLightEngine().setTaskPerBatch(5);
-                finalRootLevel.setSpawnSettings(server.isSpawningMonsters(), server.isSpawningAnimals());
+        ChunkPos center;
+        if(level == rootLevel) {
 
-                chunkProgressListener.stop();
-                server.submit(() -> callback.onLoaded(finalRootLevel));
+            // The root level is kept loaded around spawn by the start ticket
+            level.setDefaultSpawnPos(spawn, serverLevelData.getSpawnAngle());
+            center = new ChunkPos(spawn);
+            chunkProgressListener.updateSpawnPos(center);
 
-            } catch (Exception ex) {
+            if(radius < 0) return null;
 
-                LOGGER.warn("An exception occurred while loading a dynamic dimension!");
-                ex.printStackTrace();
-                server.submit(callback::onFail);
+        } else {
+
+            if(radius < 0) return null;
+
+            // Pregenerate around the position players will arrive at through a portal from spawn
+            if(stemKey.equals(LevelStem.END)) {
+                center = new ChunkPos(ServerLevel.END_SPAWN_POINT);
+            } else {
+                double scale = DimensionType.getTeleportationScale(rootLevel.dimensionType(), level.dimensionType());
+                center = new ChunkPos(Mth.floor(spawn.getX() * scale) >> 4, Mth.floor(spawn.getZ() * scale) >> 4);
+            }
+        }
+
+        serverChunkCache.getLightEngine().setTaskPerBatch(500);
+        return new PregenTask(serverChunkCache, center, radius, level != rootLevel);
+    }
+
+    private void finishLoading(ServerLevel rootLevel, CompletableFuture<ServerLevel> result) {
+
+        if(result.isDone()) return;
+        pregenTasks.clear();
+
+        WorldData worldData = worldStem.worldData();
+        ServerLevelData serverLevelData = ((AccessorServerLevel) rootLevel).getServerLevelData();
+        ServerChunkCache serverChunkCache = rootLevel.getChunkSource();
+
+        boolean debug = worldData.isDebugWorld();
+
+        if (!serverLevelData.isInitialized()) {
+            LoadPhases.Timer spawnTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "initial_spawn");
+            AccessorMinecraftServer.callSetInitialSpawn(rootLevel, serverLevelData, config.hasBonusChest(), debug);
+            if (debug) {
+                ((AccessorMinecraftServer) server).callSetupDebugLevel(worldData);
+            }
+            serverLevelData.setInitialized(true);
+            spawnTimer.end();
+        }
+        addWorldBorderListener(rootLevel);
+
+        for(ServerLevel other : levels.values()) {
+
+            if(other == rootLevel) continue;
+
+            // Kept so the delegate can be removed again if this dimension is unloaded on its own
+            BorderChangeListener delegate = new BorderChangeListener.DelegateBorderChangeListener(other.getWorldBorder());
+            rootLevel.getWorldBorder().addListener(delegate);
+            borderDelegates.put(other.dimension(), delegate);
+        }
+
+        // Load Chunks
+        LoadPhases.Timer forcedTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "forced_chunks");
+        ForcedChunksSavedData chunksSavedData = rootLevel.getDataStorage().get(ForcedChunksSavedData::load, ForcedChunksSavedData.FILE_ID);
+
+        if (chunksSavedData != null) {
+            for (long l : chunksSavedData.getChunks()) {
+                ChunkPos pos = new ChunkPos(l);
+                serverChunkCache.updateChunkForced(pos, true);
+            }
+        }
+        forcedTimer.end();
+
+        for(ServerLevel level : levels.values()) {
+            level.getChunkSource().getLightEngine().setTaskPerBatch(5);
+        }
+        rootLevel.setSpawnSettings(server.isSpawningMonsters(), server.isSpawningAnimals());
+
+        chunkProgressListener.stop();
+
+        LoadPhases.Timer handoffTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.LOAD, "handoff");
+        server.submit(() -> {
+            handoffTimer.end();
+            if(result.complete(rootLevel)) {
+                lastActiveTick = server.getTickCount();
+                storage.addLoadedContext(this);
+
+                // Evicted contexts are loaded again, so they are no longer expected to be collected
+                released = false;
+                storage.removeEvictedContext(this);
+                LeakDetector.untrack(this);
             }
         });
+    }
+
+    private void abortLoading() {
 
+        for(PregenTask task : pregenTasks) {
+            task.cancel();
+        }
+        pregenTasks.clear();
+        chunkProgressListener.stop();
+
+        if(config.autoDelete()) {
+            unloadAndDelete();
+        } else {
+            unloadAsync(false);
+        }
     }
 
     public void unloadDimension(ResourceKey<Level> dimensionKey, boolean save) {
 
+        DynamicLevel level = detachDimension(dimensionKey);
+        if(level == null) return;
+
+        flushLevel(level, save);
+        closeLevel(level, save);
+    }
+
+    public CompletableFuture<Void> unloadDimensionAsync(ResourceKey<Level> dimensionKey, boolean save) {
+
+        // Levels are removed from the server on its own thread, so the tick loop never sees a half-removed level. The
+        // flushing save waits on the chunk cache's main thread executor, so it must run there too. Only closing the
+        // chunk source and the file work are left for the io pool
+        Supplier<DynamicLevel> detach = () -> {
+            DynamicLevel level = detachDimension(dimensionKey);
+            if(level != null) flushLevel(level, save);
+            return level;
+        };
+        CompletableFuture<DynamicLevel> detached = server.isSameThread()
+                ? CompletableFuture.completedFuture(detach.get())
+                : server.submit(detach);
+
+        return detached.thenAcceptAsync(level -> {
+            if(level != null) closeLevel(level, save);
+        }, Util.ioPool());
+    }
+
+    // All level registration goes through attachDimension and detachDimension. Both maps are copy-on-write, so the
+    // server thread can keep iterating its levels while they are changed
+    private void attachDimension(ResourceKey<Level> dimensionKey, DynamicLevel level) {
+
+        levels.put(dimensionKey, level);
+        ((AccessorMinecraftServer) server).getLevels().put(dimensionKey, level);
+    }
+
+    private DynamicLevel detachDimension(ResourceKey<Level> dimensionKey) {
+
+        ResourceKey<Level> rootKey = config.getDimensionKey(LevelStem.OVERWORLD);
+        DynamicLevel root = levels.get(rootKey);
+
+        BorderChangeListener delegate = borderDelegates.remove(dimensionKey);
+        if(delegate != null && root != null) {
+            root.getWorldBorder().removeListener(delegate);
+        }
+        if(dimensionKey.equals(rootKey)) {
+            borderDelegates.clear();
+        }
+
         ((AccessorMinecraftServer) server).getLevels().remove(dimensionKey);
+        return levels.remove(dimensionKey);
+    }
 
-        DynamicLevel level = levels.remove(dimensionKey);
-        if(level == null) return;
+    private void flushLevel(DynamicLevel level, boolean save) {
 
         // Save world
         if(save) {
-            level.save(null, true, true);
+            LoadPhases.Timer saveTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.SAVE, "chunks");
+            level.save(null, true, false);
+            saveTimer.end();
+        } else {
+            // Closing the chunk source saves its chunks regardless. Doing it first means close has nothing to wait for
+            level.getChunkSource().save(true);
         }
+    }
+
+    private void closeLevel(DynamicLevel level, boolean save) {
 
         // Unload world
+        LoadPhases.Timer closeTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.UNLOAD, "close_level");
         try {
             level.getChunkSource().close();
 
@@ -292,42 +590,96 @@ public class DynamicLevelContext {
             LOGGER.warn("An exception occurred while unloading a dynamic level!");
             ex.printStackTrace();
         }
+        closeTimer.end();
+
+        PersistenceBounds bounds = config.getPersistenceBounds(level.dimension());
+        if(save && bounds != null && config.trimOnUnload() && !storage.isInMemory()) {
+            trimLevel(level, bounds);
+        }
+
+        LeakDetector.track(level);
+    }
+
+    private void trimLevel(DynamicLevel level, PersistenceBounds bounds) {
+
+        LoadPhases.Timer trimTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.UNLOAD, "trim");
+        try {
+            // Entity region files are still open until the entity manager is closed. Entities were already saved
+            ((AccessorServerLevel) level).getEntityManager().close();
+
+            int trimmed = RegionTrimmer.trim(storageAccess.getDimensionPath(level.dimension()), bounds);
+            if(trimmed > 0) {
+                LOGGER.info("Trimmed " + trimmed + " region files outside the persistence bounds of " + level.dimension().location());
+            }
+
+        } catch (IOException ex) {
+            LOGGER.warn("An exception occurred while trimming the region files of a dynamic level!");
+            ex.printStackTrace();
+        }
+        trimTimer.end();
+    }
+
+    private void saveLevelData(LevelStorageSource.LevelStorageAccess access, WorldStem stem) {
+
+        if(storage.isInMemory()) return;
+
+        LoadPhases.Timer timer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.SAVE, "level_data");
+        access.saveDataTag(stem.registries().compositeAccess(), stem.worldData());
+        timer.end();
     }
 
     public void unloadAndDelete() {
 
-        if(worldStem == null) return;
+        released = true;
+        storage.removeEvictedContext(this);
+        if(worldStem == null || unloading) return;
 
+        LoadPhases.Timer totalTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.DELETE, "total");
         for(ResourceKey<Level> key : new ArrayList<>(levels.keySet())) {
             unloadDimension(key, false);
         }
 
+        storage.removeLoadedContext(this);
+        LoadPhases.Timer filesTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.DELETE, "files");
         try {
 
-            storageAccess.deleteLevel();
+            // Move the world into the trash and release it. It is deleted in the background
+            Path folder = ((AccessorLevelStorageAccess) storageAccess).getLevelDirectory().path();
+            storageAccess.close();
+            storageAccess = null;
             worldStem = null;
 
+            WorldReaper.moveToTrash(folder, storage.getTrashDir());
+
         } catch (IOException ex) {
 
             LOGGER.warn("An exception occurred while deleting a dynamic world!");
             ex.printStackTrace();
         }
+        filesTimer.end();
+        totalTimer.end();
+
+        LeakDetector.track(this);
     }
 
     public void unload(boolean save) {
 
-        if(worldStem == null) return;
+        if(markReleased()) return;
+        if(worldStem == null || unloading) return;
 
+        LoadPhases.Timer totalTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.UNLOAD, "total");
         for(ResourceKey<Level> key : new ArrayList<>(levels.keySet())) {
             unloadDimension(key, save);
         }
 
+        storage.removeLoadedContext(this);
         try {
             // Unload session
             if (save) {
-                storageAccess.saveDataTag(worldStem.registries().compositeAccess(), worldStem.worldData());
+                saveLevelData(storageAccess, worldStem);
             }
             storageAccess.close();
+            storageAccess = null;
             worldStem = null;
 
         } catch (IOException ex) {
@@ -335,11 +687,169 @@ public class DynamicLevelContext {
             LOGGER.warn("An exception occurred while unloading a dynamic world!");
             ex.printStackTrace();
         }
+        totalTimer.end();
+
+        LeakDetector.track(this);
+    }
+
+    public CompletableFuture<Void> unloadAsync(boolean save) {
+
+        if(markReleased()) return CompletableFuture.completedFuture(null);
+        return startUnload(save);
+    }
+
+    // Marks the context as unloaded for good, so it is expected to be collected once unloaded. Returns true if it had
+    // already been evicted and unloaded, in which case there is nothing left to unload
+    private boolean markReleased() {
+
+        released = true;
+        if(storage.removeEvictedContext(this) && worldStem == null) {
+            LeakDetector.track(this);
+            return true;
+        }
+        return false;
+    }
+
+    private CompletableFuture<Void> startUnload(boolean save) {
+
+        if(worldStem == null) return CompletableFuture.completedFuture(null);
+        if(unloading) return pendingUnload;
+
+        // The level data stays available until the levels have finished saving, since they still read it
+        WorldStem stem = worldStem;
+        DynamicLevelStorage.DynamicLevelStorageAccess access = storageAccess;
+        unloading = true;
+        storage.removeLoadedContext(this);
+
+        LoadPhases.Timer totalTimer = LoadPhases.start(config.getLevelName(), LoadPhases.Operation.UNLOAD, "total");
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for(ResourceKey<Level> key : new ArrayList<>(levels.keySet())) {
+            futures.add(unloadDimensionAsync(key, save));
+        }
+
+        return pendingUnload = CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenRunAsync(() -> {
+            try {
+                // Unload session
+                if (save) {
+                    saveLevelData(access, stem);
+                }
+                access.close();
+
+            } catch (IOException ex) {
+
+                LOGGER.warn("An exception occurred while unloading a dynamic world!");
+                ex.printStackTrace();
+            }
+            totalTimer.end();
+        }, Util.ioPool()).whenCompleteAsync((v, ex) -> {
+
+            worldStem = null;
+            storageAccess = null;
+            unloading = false;
+
+            // Evicted contexts are kept, so they can be loaded again
+            if(released) LeakDetector.track(this);
+
+        }, server);
+    }
+
+    public boolean isLoaded() {
+        return worldStem != null && !unloading;
+    }
+
+    public boolean isHibernating() {
+        return hibernating;
+    }
+
+    public long getLastActiveTick() {
+        return lastActiveTick;
+    }
+
+    public boolean hasPlayers() {
+        for(DynamicLevel level : levels.values()) {
+            if(!level.players().isEmpty()) return true;
+        }
+        return false;
+    }
+
+    // Returns the root level, loading the context again first if it was unloaded, for example after being evicted
+    public CompletableFuture<ServerLevel> ensureLoaded() {
+
+        ServerLevel root = isLoaded() ? getLevel(config.getDimensionKey(LevelStem.OVERWORLD)) : null;
+        if(root != null) {
+            wake();
+            return CompletableFuture.completedFuture(root);
+        }
+
+        return pendingUnload.handle((v, ex) -> null).thenCompose(v -> loadAllDimensions());
+    }
+
+    // Writes every loaded chunk, their entities and the saved data of this context's levels to a compressed archive
+    public CompletableFuture<Void> captureSnapshot(Path file) {
+        return LevelSnapshot.capture(server, this, file);
+    }
+
+    // Restores a snapshot taken with captureSnapshot into the loaded levels. Only chunks in the snapshot are changed
+    public CompletableFuture<Void> restoreSnapshot(Path file) {
+        return LevelSnapshot.restore(server, this, file);
+    }
+
+    public TickPolicy getTickPolicy() {
+        return tickPolicy;
+    }
+
+    // Changes how often this context's levels tick. Takes effect on the next server tick
+    public void setTickPolicy(TickPolicy tickPolicy) {
+        this.tickPolicy = tickPolicy;
+    }
+
+    public void hibernate() {
+        if(hibernating) return;
+        hibernating = true;
+        LOGGER.debug("Dynamic level " + config.getLevelName() + " is now hibernating");
+    }
+
+    public void wake() {
+        hibernating = false;
+        lastActiveTick = server.getTickCount();
+    }
+
+    // Called by the storage about once a second while the context is loaded
+    void updateIdlePolicy(long tick) {
+
+        if(hasPlayers()) {
+            if(hibernating) wake();
+            lastActiveTick = tick;
+            return;
+        }
+
+        long idleTicks = tick - lastActiveTick;
+
+        int unloadAfter = config.getUnloadAfter();
+        if(unloadAfter >= 0 && idleTicks >= unloadAfter * 20L && !config.autoDelete()) {
+            evict();
+            return;
+        }
+
+        int hibernateAfter = config.getHibernateAfter();
+        if(hibernateAfter >= 0 && idleTicks >= hibernateAfter * 20L) {
+            hibernate();
+        }
+    }
+
+    public CompletableFuture<Void> evict() {
+        LOGGER.info("Unloading idle dynamic level " + config.getLevelName());
+        hibernating = false;
+
+        // The storage keeps evicted contexts reachable, so they can still be found and loaded again
+        if(isLoaded()) storage.addEvictedContext(this);
+        return startUnload(config.autoSave());
     }
 
     public WorldLoader.DataLoadOutput<WorldData> getExistingData() {
 
-        if(worldStem == null) return null;
+        // The storage access is released when the context is evicted
+        if(worldStem == null || storageAccess == null) return null;
 
         // Get access to the server's world presets
         WorldPreset worldPreset = config.getWorldPreset();
@@ -362,26 +872,7 @@ public class DynamicLevelContext {
         return new WorldLoader.DataLoadOutput<>(data.getFirst(), data.getSecond().dimensionsRegistryAccess());
     }
 
-    private WorldLoader.DataLoadOutput<WorldData> loadLevelData(WorldLoader.DataLoadContext dataLoadContext) {
-
-        // Get access to the server's world presets
-        WorldPreset worldPreset = config.getWorldPreset();
-
-        // Load dimensions from world preset
-        WorldDimensions worldDimensions = worldPreset.createWorldDimensions();
-
-        // Try to load level.dat, unless requested not to
-        if(!config.recreateLevelData()) {
-
-            WorldLoader.DataLoadOutput<WorldData> data = loadExistingData(worldDimensions, dataLoadContext.datapackWorldgen(), dataLoadContext.dataConfiguration(), storageAccess);
-
-            // Return early if level.dat was loaded
-            if (data != null) {
-                return data;
-            }
-        }
-
-        // Create a new level.dat
+    private WorldData createLevelData(WorldLoader.DataLoadContext dataLoadContext, WorldDimensions.Complete complete) {
 
         // Create default level settings from config
         LevelSettings levelSettings = new LevelSettings(
@@ -395,15 +886,10 @@ public class DynamicLevelContext {
         // Create default world options from config
         WorldOptions worldOptions = new WorldOptions(config.getSeed(), config.generateStructures(), config.hasBonusChest());
 
-        // Finalize dimension registry now that custom settings have been applied
-        WorldDimensions.Complete complete = worldDimensions.bake(worldDimensions.dimensions());
         Lifecycle lifecycle = complete.lifecycle().add(dataLoadContext.datapackWorldgen().allRegistriesLifecycle());
 
         // Create level data for this dynamic level
-        PrimaryLevelData primary = new PrimaryLevelData(levelSettings, worldOptions, complete.specialWorldProperty(), lifecycle);
-
-        // Return the level data and the dimension registry
-        return new WorldLoader.DataLoadOutput<>(primary, complete.dimensionsRegistryAccess());
+        return new PrimaryLevelData(levelSettings, worldOptions, complete.specialWorldProperty(), lifecycle);
 
     }
 
@@ -451,8 +937,16 @@ public class DynamicLevelContext {
     @ParametersAreNonnullByDefault
     public class DynamicLevel extends ServerLevel {
 
+        private final LevelMetrics metrics = new LevelMetrics(this);
+        private final LongSet modifiedChunks = new LongOpenHashSet();
+        private final LongSet savedChunks = LongSets.synchronize(new LongOpenHashSet());
+        private final Long2IntMap pendingSaves = new Long2IntOpenHashMap();
+        private int nextSaveId;
+        private final PersistenceBounds persistenceBounds;
+
         public DynamicLevel(Executor executor, ServerLevelData serverLevelData, ResourceKey<Level> dimensionKey, LevelStem levelStem, ChunkProgressListener chunkProgressListener, long seed, List<CustomSpawner> spawners, boolean tickTime) {
             super(server, executor, storageAccess, serverLevelData, dimensionKey, levelStem, chunkProgressListener, false, seed, spawners, tickTime);
+            this.persistenceBounds = config.getPersistenceBounds(dimensionKey);
         }
 
         public ResourceKey<Level> getOverworld() {
@@ -475,6 +969,150 @@ public class DynamicLevelContext {
             return DynamicLevelContext.this;
         }
 
+        public LevelMetrics getMetrics() {
+
+            return metrics;
+        }
+
+        // Chunks in which a block or block entity has changed since the level was loaded or last reset
+        public LongSet getModifiedChunks() {
+
+            return LongSets.unmodifiable(modifiedChunks);
+        }
+
+        // Restores every modified chunk from the template, or from the last save if there is no template, without
+        // unloading the level. Completes on the server thread with the number of chunks restored. Chunks which could
+        // not be restored stay in the modified set
+        public CompletableFuture<Integer> resetModifiedChunks() {
+
+            if(!server.isSameThread()) {
+                return server.submit(this::resetModifiedChunks).thenCompose(future -> future);
+            }
+
+            long[] chunks = modifiedChunks.toLongArray();
+
+            Path templateFolder = null;
+            Path template = config.getTemplate();
+            if(template != null && storageAccess != null) {
+                Path root = ((AccessorLevelStorageAccess) storageAccess).getLevelDirectory().path();
+                templateFolder = template.resolve(root.relativize(storageAccess.getDimensionPath(dimension())).toString());
+            }
+
+            return ChunkRestorer.resetChunks(this, chunks, templateFolder).thenApply(restored -> {
+
+                modifiedChunks.removeAll(restored);
+                if(restored.size() < chunks.length) {
+                    LOGGER.warn("Unable to reset " + (chunks.length - restored.size()) + " modified chunks in dynamic level " + dimension().location() + ", since they have no saved copy!");
+                }
+                return restored.size();
+            });
+        }
+
+        // Whether the chunk is known to be identical to its copy in storage, so saving it can be skipped
+        public boolean isChunkSaved(long chunkPos) {
+
+            return savedChunks.contains(chunkPos);
+        }
+
+        // Whether the chunk is inside the level's persistence bounds. Chunks outside them are never saved
+        public boolean isChunkPersistent(long chunkPos) {
+
+            return persistenceBounds == null || persistenceBounds.contains(chunkPos);
+        }
+
+        public void markChunkSaved(long chunkPos) {
+
+            savedChunks.add(chunkPos);
+        }
+
+        // Called on the server thread when a chunk is queued to be written. Returns the id to finish the save with
+        public int beginChunkSave(long chunkPos) {
+
+            synchronized (pendingSaves) {
+                savedChunks.remove(chunkPos);
+                pendingSaves.put(chunkPos, ++nextSaveId);
+                return nextSaveId;
+            }
+        }
+
+        // Called once a queued write has reached storage. The chunk is only marked saved if it has not changed or been
+        // queued again since
+        public void finishChunkSave(long chunkPos, int saveId) {
+
+            synchronized (pendingSaves) {
+                if(pendingSaves.get(chunkPos) == saveId) {
+                    pendingSaves.remove(chunkPos);
+                    savedChunks.add(chunkPos);
+                }
+            }
+        }
+
+        public void markChunkUnsaved(long chunkPos) {
+
+            synchronized (pendingSaves) {
+                savedChunks.remove(chunkPos);
+                pendingSaves.remove(chunkPos);
+            }
+        }
+
+        @Override
+        public boolean setBlock(BlockPos blockPos, BlockState blockState, int flags, int recursionLeft) {
+
+            boolean changed = super.setBlock(blockPos, blockState, flags, recursionLeft);
+            if(changed) {
+                modifiedChunks.add(ChunkPos.asLong(blockPos));
+            }
+
+            return changed;
+        }
+
+        // Scheduled ticks are saved with the chunk, so scheduling one means the chunk must be saved again
+        @Override
+        public void scheduleTick(BlockPos blockPos, Block block, int delay, TickPriority priority) {
+
+            super.scheduleTick(blockPos, block, delay, priority);
+            markChunkUnsaved(ChunkPos.asLong(blockPos));
+        }
+
+        @Override
+        public void scheduleTick(BlockPos blockPos, Block block, int delay) {
+
+            super.scheduleTick(blockPos, block, delay);
+            markChunkUnsaved(ChunkPos.asLong(blockPos));
+        }
+
+        @Override
+        public void scheduleTick(BlockPos blockPos, Fluid fluid, int delay, TickPriority priority) {
+
+            super.scheduleTick(blockPos, fluid, delay, priority);
+            markChunkUnsaved(ChunkPos.asLong(blockPos));
+        }
+
+        @Override
+        public void scheduleTick(BlockPos blockPos, Fluid fluid, int delay) {
+
+            super.scheduleTick(blockPos, fluid, delay);
+            markChunkUnsaved(ChunkPos.asLong(blockPos));
+        }
+
+        // Chunks which are loaded again are read back from storage, so there is no need to remember them
+        @Override
+        public void unload(LevelChunk chunk) {
+
+            super.unload(chunk);
+            markChunkUnsaved(chunk.getPos().toLong());
+        }
+
+        @Override
+        public void blockEntityChanged(BlockPos blockPos) {
+
+            super.blockEntityChanged(blockPos);
+
+            long chunkPos = ChunkPos.asLong(blockPos);
+            modifiedChunks.add(chunkPos);
+            markChunkUnsaved(chunkPos);
+        }
+
         @Override
         public long getSeed() {
             return config.getSeed();
@@ -490,6 +1128,19 @@ public class DynamicLevelContext {
             return !config.autoSave();
         }
 
+        // Periodic autosaves are spread out by the storage's save scheduler. Any other save happens immediately
+        @Override
+        public void save(@Nullable ProgressListener progressListener, boolean flush, boolean skip) {
+
+            if(!skip && !flush && SaveScheduler.isAutosaving()) {
+                storage.getSaveScheduler().schedule(this);
+                return;
+            }
+
+            if(!skip) storage.getSaveScheduler().cancel(this);
+            super.save(progressListener, flush, skip);
+        }
+
         @Override
         public void setMapData(String string, MapItemSavedData mapItemSavedData) {
             getDataStorage().set(string, mapItemSavedData);
@@ -531,6 +1182,49 @@ public class DynamicLevelContext {
         public boolean isFlat() {
             return worldStem.worldData().isFlatWorld();
         }
+
+        @Override
+        public void tick(BooleanSupplier hasTimeLeft) {
+
+            if(hibernating) {
+
+                // Wake up as soon as a player arrives
+                if(players().isEmpty()) return;
+                wake();
+            }
+
+            long start = System.nanoTime();
+
+            if(tickPolicy.shouldTick(server.getTickCount())) {
+                super.tick(hasTimeLeft);
+            } else {
+                tickPlayersOnly(hasTimeLeft);
+            }
+
+            metrics.recordTick(System.nanoTime() - start);
+        }
+
+        // A reduced tick which skips block, fluid and random ticks, weather, time, raids and non-player entities
+        private void tickPlayersOnly(BooleanSupplier hasTimeLeft) {
+
+            getChunkSource().tick(hasTimeLeft, false);
+
+            for(ServerPlayer player : List.copyOf(players())) {
+                if(!player.isRemoved() && !player.isPassenger()) {
+                    tickNonPassenger(player);
+                }
+            }
+
+            // Ticking chunks is skipped above, but players should still see block changes and tracked entities
+            ChunkMap chunkMap = getChunkSource().chunkMap;
+            ((AccessorChunkMap) chunkMap).callTick();
+            for(ChunkHolder holder : ((AccessorChunkMap) chunkMap).callGetChunks()) {
+                LevelChunk chunk = holder.getTickingChunk();
+                if(chunk != null) holder.broadcastChanges(chunk);
+            }
+
+            ((AccessorServerLevel) this).getEntityManager().tick();
+        }
     }
 
 }
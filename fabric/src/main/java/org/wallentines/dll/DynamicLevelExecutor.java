@@ -0,0 +1,112 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DynamicLevelExecutor implements Executor {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    private DynamicLevelExecutor(String name, int threads, int priority) {
+
+        int pool = POOL_COUNT.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + pool + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            thread.setUncaughtExceptionHandler((t, ex) -> {
+                LOGGER.error("An uncaught exception occurred on dynamic level thread " + t.getName() + "!");
+                ex.printStackTrace();
+            });
+            return thread;
+        };
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(@NotNull Runnable command) {
+        executor.execute(command);
+        peakQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public long getCompletedTasks() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public static DynamicLevelExecutor createDefault() {
+        return builder().build();
+    }
+
+    public static DynamicLevelExecutor createWorldgen() {
+        return builder().name("DynamicLevel-Worldgen").build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private String name = "DynamicLevel-Worker";
+        private int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() / 2, 4));
+        private int priority = Thread.NORM_PRIORITY - 1;
+
+        private Builder() { }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public DynamicLevelExecutor build() {
+
+            if(threads < 1) throw new IllegalStateException("A dynamic level executor needs at least one thread!");
+            if(priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) throw new IllegalStateException("Invalid thread priority " + priority + "!");
+
+            return new DynamicLevelExecutor(name, threads, priority);
+        }
+    }
+
+}
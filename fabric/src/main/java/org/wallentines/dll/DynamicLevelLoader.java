@@ -0,0 +1,20 @@
+package org.wallentines.dll;
+
+import net.fabricmc.api.ModInitializer;
+import org.wallentines.midnightcore.fabric.event.server.CommandLoadEvent;
+import org.wallentines.midnightcore.fabric.event.server.ServerStopEvent;
+import org.wallentines.midnightlib.event.Event;
+
+public class DynamicLevelLoader implements ModInitializer {
+
+    @Override
+    public void onInitialize() {
+
+        Event.register(CommandLoadEvent.class, this, ev -> DynamicLevelCommand.register(ev.getDispatcher()));
+        Event.register(ServerStopEvent.class, this, ev -> {
+            for(DynamicLevelStorage storage : DynamicLevelStorage.getStorages()) {
+                storage.unloadAll();
+            }
+        });
+    }
+}
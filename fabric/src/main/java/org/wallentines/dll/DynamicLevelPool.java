@@ -0,0 +1,172 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.world.level.dimension.LevelStem;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+
+// Keeps a number of loaded and pregenerated contexts for a single WorldConfig template ready to be handed out.
+// All methods should be called on the server thread.
+public class DynamicLevelPool {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final DynamicLevelStorage storage;
+    private final WorldConfig template;
+    private final Deque<DynamicLevelContext> ready = new ArrayDeque<>();
+
+    private int size;
+    private int loading;
+    private float memoryThreshold = 0.85f;
+    private boolean closed;
+
+    public DynamicLevelPool(DynamicLevelStorage storage, WorldConfig template, int size) {
+        this.storage = storage;
+        this.template = template;
+        this.size = size;
+
+        storage.registerPool(this);
+    }
+
+    public WorldConfig getTemplate() {
+        return template;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getAvailable() {
+        return ready.size();
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+
+        while(ready.size() > size) {
+            release(ready.removeLast());
+        }
+        refill();
+    }
+
+    public void setMemoryThreshold(float memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    public void acquire(DynamicLevelCallback callback) {
+
+        if(closed) throw new IllegalStateException("Attempt to acquire a level from a closed pool!");
+
+        // Contexts which were unloaded while waiting in the pool cannot be handed out
+        DynamicLevelContext ctx = ready.poll();
+        while(ctx != null && !ctx.isLoaded()) {
+            release(ctx);
+            ctx = ready.poll();
+        }
+
+        if(ctx == null) {
+
+            // The pool is exhausted, so load a context for this caller directly
+            storage.createWorldContext(nextConfig()).loadAllDimensions(callback);
+
+        } else {
+
+            callback.onLoaded(ctx.getLevel(ctx.getConfig().getDimensionKey(LevelStem.OVERWORLD)));
+        }
+
+        refill();
+    }
+
+    boolean isReady(DynamicLevelContext ctx) {
+        return ready.contains(ctx);
+    }
+
+    public void refill() {
+
+        if(closed) return;
+
+        if(isMemoryTight()) {
+            if(!ready.isEmpty()) {
+                LOGGER.info("Memory is running low, shrinking dynamic level pool for " + template.getLevelName());
+                release(ready.removeLast());
+            }
+            return;
+        }
+
+        while(ready.size() + loading < size) {
+
+            loading++;
+
+            DynamicLevelContext ctx = storage.createWorldContext(nextConfig());
+            ctx.loadAllDimensions(DynamicLevelCallback.of(level -> {
+
+                loading--;
+                if(closed || ready.size() >= size) {
+                    release(ctx);
+                    return;
+                }
+                ready.add(ctx);
+
+            }, () -> {
+
+                loading--;
+                LOGGER.warn("Unable to load a pooled dynamic level for " + template.getLevelName() + "!");
+            }));
+        }
+    }
+
+    public void close() {
+
+        closed = true;
+        storage.unregisterPool(this);
+        while(!ready.isEmpty()) {
+            release(ready.poll());
+        }
+    }
+
+    private WorldConfig nextConfig() {
+        return template.forInstance(UUID.randomUUID().toString().substring(0, 8));
+    }
+
+    private boolean isMemoryTight() {
+
+        // Prefer usage measured after the last collection, as current usage includes garbage
+        long used = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() != MemoryType.HEAP) continue;
+
+            MemoryUsage usage = pool.getCollectionUsage();
+            if(usage == null) usage = pool.getUsage();
+
+            used += usage.getUsed();
+        }
+
+        return (float) used / (float) Runtime.getRuntime().maxMemory() > memoryThreshold;
+    }
+
+    private void release(DynamicLevelContext ctx) {
+
+        if(ctx.getConfig().autoDelete()) {
+            ctx.unloadAndDelete();
+            return;
+        }
+
+        // Pooled instances are never handed out again, so their folders are deleted as well
+        ctx.unload(false);
+        try {
+            WorldReaper.moveToTrash(storage.getBaseDir().resolve(ctx.getConfig().getLevelName()), storage.getTrashDir());
+        } catch (IOException ex) {
+            LOGGER.warn("An exception occurred while deleting a pooled dynamic level!");
+            ex.printStackTrace();
+        }
+    }
+
+}
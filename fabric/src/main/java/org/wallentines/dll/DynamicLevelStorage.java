@@ -2,32 +2,225 @@ package org.wallentines.dll;
 
 import com.mojang.datafixers.DataFixer;
 import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.datafix.DataFixers;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.dimension.LevelStem;
 import net.minecraft.world.level.storage.LevelStorageSource;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.wallentines.dll.mixin.AccessorLevelStorageAccess;
 import org.wallentines.midnightcore.api.MidnightCoreAPI;
 import org.wallentines.midnightcore.api.server.MServer;
 import org.wallentines.midnightcore.fabric.server.FabricServer;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DynamicLevelStorage extends LevelStorageSource {
 
-    private final HashMap<String, DynamicLevelContext> preConfigCache = new HashMap<>();
+    private static final Set<DynamicLevelStorage> STORAGES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
 
-    private DynamicLevelStorage(Path worldsPath, Path backupsPath, DataFixer dataFixer) {
+    // Accesses are created on executor threads, so this may be used by several threads at once
+    private final Map<String, DynamicLevelContext> preConfigCache = new ConcurrentHashMap<>();
+    private final DynamicLevelExecutor executor;
+    private final DynamicLevelExecutor worldgenExecutor;
+    private final LoadQueue loadQueue = new LoadQueue();
+    private final SaveScheduler saveScheduler = new SaveScheduler();
+    private final Set<DynamicLevelContext> loadedContexts = ConcurrentHashMap.newKeySet();
+    private final Set<DynamicLevelContext> evictedContexts = ConcurrentHashMap.newKeySet();
+    private final Set<DynamicLevelContext> contexts = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private final Set<DynamicLevelPool> pools = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private int maxLoadedContexts = -1;
+    private final boolean inMemory;
+
+    private DynamicLevelStorage(Path worldsPath, Path backupsPath, DataFixer dataFixer, DynamicLevelExecutor executor, DynamicLevelExecutor worldgenExecutor, boolean inMemory) {
         super(worldsPath, backupsPath, dataFixer);
+        this.executor = executor;
+        this.worldgenExecutor = worldgenExecutor;
+        this.inMemory = inMemory;
+
+        WorldReaper.emptyTrash(getTrashDir());
+    }
+
+    public Path getTrashDir() {
+        return getBaseDir().resolve(".trash");
+    }
+
+    // In-memory storages never write world data to disk. Their worlds only exist until they are unloaded
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    public DynamicLevelExecutor getExecutor() {
+        return executor;
+    }
+
+    // Chunk generation runs on its own pool. Load steps on the main executor block on generated chunks, so sharing
+    // one pool could leave every thread waiting on work queued behind it
+    public DynamicLevelExecutor getWorldgenExecutor() {
+        return worldgenExecutor;
+    }
+
+    public LoadQueue getLoadQueue() {
+        return loadQueue;
+    }
+
+    public SaveScheduler getSaveScheduler() {
+        return saveScheduler;
+    }
+
+    public Collection<DynamicLevelContext> getLoadedContexts() {
+        return Collections.unmodifiableSet(loadedContexts);
+    }
+
+    // Idle contexts will be unloaded, least recently used first, while more than this many are loaded. Negative
+    // values disable the limit
+    public void setMaxLoadedContexts(int maxLoadedContexts) {
+        this.maxLoadedContexts = maxLoadedContexts;
+    }
+
+    void addLoadedContext(DynamicLevelContext context) {
+        loadedContexts.add(context);
+    }
+
+    void removeLoadedContext(DynamicLevelContext context) {
+        loadedContexts.remove(context);
+    }
+
+    void addEvictedContext(DynamicLevelContext context) {
+        evictedContexts.add(context);
+    }
+
+    boolean removeEvictedContext(DynamicLevelContext context) {
+        return evictedContexts.remove(context);
+    }
+
+    void registerContext(DynamicLevelContext context) {
+        contexts.add(context);
+    }
+
+    void registerPool(DynamicLevelPool pool) {
+        pools.add(pool);
+    }
+
+    void unregisterPool(DynamicLevelPool pool) {
+        pools.remove(pool);
+    }
+
+    boolean isPendingAccess(DynamicLevelContext context) {
+        return preConfigCache.containsValue(context);
+    }
+
+    // Unloads every context created from this storage which still has levels loaded
+    public void unloadAll() {
+
+        List<DynamicLevelContext> toUnload;
+        synchronized (contexts) {
+            toUnload = new ArrayList<>(contexts);
+        }
+
+        for(DynamicLevelContext ctx : toUnload) {
+            if(ctx.getConfig().autoDelete()) {
+                ctx.unloadAndDelete();
+            } else {
+                ctx.unload(ctx.getConfig().autoSave());
+            }
+        }
+    }
+
+    public void tick(MinecraftServer server) {
+
+        loadQueue.poll(server);
+        saveScheduler.tick(server);
+
+        int tick = server.getTickCount();
+        if(tick % 20 != 0) return;
+
+        List<DynamicLevelPool> poolList;
+        synchronized (pools) {
+            poolList = new ArrayList<>(pools);
+        }
+
+        // Contexts waiting in a pool have no players by design, so they are never idle
+        for(DynamicLevelContext ctx : new ArrayList<>(loadedContexts)) {
+            if(!isPooled(poolList, ctx)) ctx.updateIdlePolicy(tick);
+        }
+
+        // Pools shrink under memory pressure even while nothing is acquired from them
+        for(DynamicLevelPool pool : poolList) {
+            pool.refill();
+        }
+
+        if(maxLoadedContexts >= 0 && loadedContexts.size() > maxLoadedContexts) {
+
+            List<DynamicLevelContext> idle = new ArrayList<>();
+            for(DynamicLevelContext ctx : loadedContexts) {
+                if(!ctx.getConfig().autoDelete() && !ctx.hasPlayers() && !isPooled(poolList, ctx)) idle.add(ctx);
+            }
+            idle.sort(Comparator.comparingLong(DynamicLevelContext::getLastActiveTick));
+
+            int excess = loadedContexts.size() - maxLoadedContexts;
+            for(int i = 0 ; i < excess && i < idle.size() ; i++) {
+                idle.get(i).evict();
+            }
+        }
+    }
+
+    private static boolean isPooled(List<DynamicLevelPool> pools, DynamicLevelContext ctx) {
+
+        for(DynamicLevelPool pool : pools) {
+            if(pool.isReady(ctx)) return true;
+        }
+        return false;
+    }
+
+    // Finds the context which owns the given dimension, whether or not it is currently loaded
+    @Nullable
+    public static DynamicLevelContext findContext(ResourceKey<Level> dimension) {
+
+        for(DynamicLevelStorage storage : getStorages()) {
+            synchronized (storage.contexts) {
+                for(DynamicLevelContext ctx : storage.contexts) {
+                    if(ctx.getConfig().getLevelKeys().contains(dimension)) return ctx;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static Collection<DynamicLevelStorage> getStorages() {
+
+        synchronized (STORAGES) {
+            return new ArrayList<>(STORAGES);
+        }
+    }
+
+    public static void tickAll(MinecraftServer server) {
+
+        List<DynamicLevelStorage> storages;
+        synchronized (STORAGES) {
+            storages = new ArrayList<>(STORAGES);
+        }
+
+        for(DynamicLevelStorage storage : storages) {
+            storage.tick(server);
+        }
+
+        // Once a minute, report anything which was unloaded but survived a full collection since
+        if(server.getTickCount() % 1200 == 0) {
+            LeakDetector.check(server);
+        }
     }
 
     public DynamicLevelContext createWorldContext(WorldConfig config) {
 
         MServer server = MidnightCoreAPI.getRunningServer();
         if(server == null) throw new IllegalStateException("Attempt to create dynamic level before server startup!");
+        if(inMemory && !config.autoDelete()) throw new IllegalArgumentException("Worlds in an in-memory storage must be created with autoDelete!");
 
         return new DynamicLevelContext(((FabricServer) server).getInternal(),this, config);
     }
@@ -39,13 +232,79 @@ public class DynamicLevelStorage extends LevelStorageSource {
     }
 
     DynamicLevelStorageAccess createAccess(@NotNull String worldId, DynamicLevelContext ctx) throws IOException {
+
+        Path template = ctx.getConfig().getTemplate();
+        if(inMemory) {
+
+            // Chunks are read straight from the template, so only its level data is copied
+            Path instance = getBaseDir().resolve(worldId);
+            if(template != null && !Files.exists(instance)) {
+                WorldTemplate.createInstance(template, instance, false);
+            }
+            MemoryStorage.registerRoot(instance, template);
+
+        } else if(template != null && ctx.getConfig().isTemplateShared()) {
+
+            // Region files stay in the template, and the instance only keeps the chunks it writes
+            Path instance = getBaseDir().resolve(worldId);
+            if(!Files.exists(instance)) {
+                WorldTemplate.createInstance(template, instance, false);
+            }
+            WorldTemplate.registerSharedInstance(instance, template);
+
+        } else if(template != null) {
+
+            Path instance = getBaseDir().resolve(worldId);
+            if(!Files.exists(instance)) {
+                WorldTemplate.createInstance(template, instance);
+            }
+            WorldTemplate.registerInstance(instance);
+        }
+
         preConfigCache.put(worldId, ctx);
-        return new DynamicLevelStorageAccess(worldId);
+        try {
+            return new DynamicLevelStorageAccess(worldId);
+        } finally {
+            // Do not keep the context reachable if the session lock could not be acquired
+            preConfigCache.remove(worldId);
+        }
     }
 
 
     public static DynamicLevelStorage create(Path worldsPath, Path backupsPath) {
-        return new DynamicLevelStorage(worldsPath, backupsPath, DataFixers.getDataFixer());
+        return create(worldsPath, backupsPath, DynamicLevelExecutor.createDefault());
+    }
+
+    public static DynamicLevelStorage create(Path worldsPath, Path backupsPath, DynamicLevelExecutor executor) {
+        return create(worldsPath, backupsPath, executor, DynamicLevelExecutor.createWorldgen());
+    }
+
+    public static DynamicLevelStorage create(Path worldsPath, Path backupsPath, DynamicLevelExecutor executor, DynamicLevelExecutor worldgenExecutor) {
+
+        if(executor == worldgenExecutor) throw new IllegalArgumentException("Worldgen must not share an executor with level loading!");
+
+        DynamicLevelStorage out = new DynamicLevelStorage(worldsPath, backupsPath, DataFixers.getDataFixer(), executor, worldgenExecutor, false);
+        STORAGES.add(out);
+
+        return out;
+    }
+
+    public static DynamicLevelStorage createInMemory(Path worldsPath) {
+        return createInMemory(worldsPath, DynamicLevelExecutor.createDefault());
+    }
+
+    public static DynamicLevelStorage createInMemory(Path worldsPath, DynamicLevelExecutor executor) {
+        return createInMemory(worldsPath, executor, DynamicLevelExecutor.createWorldgen());
+    }
+
+    public static DynamicLevelStorage createInMemory(Path worldsPath, DynamicLevelExecutor executor, DynamicLevelExecutor worldgenExecutor) {
+
+        if(executor == worldgenExecutor) throw new IllegalArgumentException("Worldgen must not share an executor with level loading!");
+
+        DynamicLevelStorage out = new DynamicLevelStorage(worldsPath, worldsPath, DataFixers.getDataFixer(), executor, worldgenExecutor, true);
+        STORAGES.add(out);
+
+        return out;
     }
 
 
@@ -63,6 +322,10 @@ public class DynamicLevelStorage extends LevelStorageSource {
             return context == null ? preConfigCache.get(getLevelId()) : context;
         }
 
+        public boolean isInMemory() {
+            return inMemory;
+        }
+
         @Override
         public @NotNull Path getDimensionPath(@NotNull ResourceKey<Level> resourceKey) {
 
@@ -80,6 +343,18 @@ public class DynamicLevelStorage extends LevelStorageSource {
 
             return root.resolve("dimensions").resolve(resourceKey.location().getNamespace()).resolve(resourceKey.location().getPath());
         }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if(inMemory) {
+                MemoryStorage.unregisterRoot(((AccessorLevelStorageAccess) this).getLevelDirectory().path());
+            } else if(context.getConfig().getTemplate() != null && context.getConfig().isTemplateShared()) {
+                WorldTemplate.unregisterSharedInstance(((AccessorLevelStorageAccess) this).getLevelDirectory().path());
+            } else if(context.getConfig().getTemplate() != null) {
+                WorldTemplate.unregisterInstance(((AccessorLevelStorageAccess) this).getLevelDirectory().path());
+            }
+        }
     }
 
 
@@ -0,0 +1,155 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.border.BorderChangeListener;
+import org.slf4j.Logger;
+import org.wallentines.dll.mixin.AccessorDelegateBorderChangeListener;
+import org.wallentines.dll.mixin.AccessorWorldBorder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps weak references to levels and contexts once they are unloaded. Any which are still reachable after a full
+// garbage collection are reported, along with whatever known holders still refer to them.
+public class LeakDetector {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+    private static final Set<Tracked> TRACKED = ConcurrentHashMap.newKeySet();
+
+    private static volatile boolean enabled = !Boolean.getBoolean("dll.disableLeakDetector");
+
+    public static void setEnabled(boolean enabled) {
+        LeakDetector.enabled = enabled;
+        if(!enabled) TRACKED.clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static int getTrackedCount() {
+        return TRACKED.size();
+    }
+
+    static void track(DynamicLevelContext.DynamicLevel level) {
+        if(enabled) TRACKED.add(new Tracked(level, "level " + level.dimension().location(), getMajorCollections()));
+    }
+
+    static void track(DynamicLevelContext context) {
+        if(enabled) TRACKED.add(new Tracked(context, "context " + context.getConfig().getLevelName(), getMajorCollections()));
+    }
+
+    static void untrack(DynamicLevelContext context) {
+        TRACKED.removeIf(tracked -> tracked.get() == context);
+    }
+
+    // Reports objects which survived at least one full collection since they were unloaded. Returns the number of
+    // objects reported
+    public static int check(MinecraftServer server) {
+
+        Reference<?> ref;
+        while((ref = QUEUE.poll()) != null) {
+            TRACKED.remove(ref);
+        }
+
+        long collections = getMajorCollections();
+        int leaks = 0;
+
+        for(Tracked tracked : new ArrayList<>(TRACKED)) {
+
+            if(tracked.collections >= collections) continue;
+
+            Object obj = tracked.get();
+            TRACKED.remove(tracked);
+            if(obj == null) continue;
+
+            leaks++;
+            List<String> hints = getHints(server, obj);
+            LOGGER.warn("Unloaded dynamic " + tracked.description + " is still reachable after garbage collection! "
+                    + (hints.isEmpty() ? "No known holder refers to it, so it is likely held by a callback, future or another mod." : "Possible holders: " + String.join(", ", hints)));
+        }
+
+        return leaks;
+    }
+
+    // Forces a full collection before checking. This can pause the server, so it is only done on request
+    public static int checkNow(MinecraftServer server) {
+        System.gc();
+        return check(server);
+    }
+
+    private static List<String> getHints(MinecraftServer server, Object obj) {
+
+        List<String> out = new ArrayList<>();
+
+        if(obj instanceof DynamicLevelContext.DynamicLevel level) {
+
+            if(server.getLevel(level.dimension()) == level) {
+                out.add("the server's level map");
+            }
+            if(level.getContext().getLevel(level.dimension()) == level) {
+                out.add("its context's level map");
+            }
+            for(ServerPlayer player : server.getPlayerList().getPlayers()) {
+                if(player.getLevel() == level) out.add("player " + player.getGameProfile().getName());
+            }
+            for(ServerLevel other : server.getAllLevels()) {
+                for(BorderChangeListener listener : ((AccessorWorldBorder) other.getWorldBorder()).getListeners()) {
+                    if(listener instanceof BorderChangeListener.DelegateBorderChangeListener
+                            && ((AccessorDelegateBorderChangeListener) listener).getWorldBorder() == level.getWorldBorder()) {
+                        out.add("a border listener on " + other.dimension().location());
+                    }
+                }
+            }
+            obj = level.getContext();
+        }
+
+        if(obj instanceof DynamicLevelContext context) {
+            for(DynamicLevelStorage storage : DynamicLevelStorage.getStorages()) {
+                if(storage.getLoadedContexts().contains(context)) out.add("its storage's loaded contexts");
+                if(storage.isPendingAccess(context)) out.add("its storage's pending level accesses");
+            }
+        }
+
+        return out;
+    }
+
+    private static long getMajorCollections() {
+
+        // Young collections never reach unloaded levels once they are tenured, so only collectors which cover the old
+        // generation are counted
+        long out = 0;
+        for(GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = bean.getName();
+            if(name.contains("Old") || name.contains("MarkSweep") || name.contains("Concurrent") || name.contains("Cycles")) {
+                out += Math.max(0, bean.getCollectionCount());
+            }
+        }
+        return out;
+    }
+
+    private static class Tracked extends WeakReference<Object> {
+
+        private final String description;
+        private final long collections;
+
+        private Tracked(Object referent, String description, long collections) {
+            super(referent, QUEUE);
+            this.description = description;
+            this.collections = collections;
+        }
+    }
+
+}
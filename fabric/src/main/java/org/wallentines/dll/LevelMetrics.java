@@ -0,0 +1,92 @@
+package org.wallentines.dll;
+
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.storage.IOWorker;
+import org.wallentines.dll.mixin.AccessorChunkStorage;
+import org.wallentines.dll.mixin.AccessorEntityTickList;
+import org.wallentines.dll.mixin.AccessorIOWorker;
+import org.wallentines.dll.mixin.AccessorLevel;
+import org.wallentines.dll.mixin.AccessorServerLevel;
+
+import java.util.Arrays;
+
+// Records the time taken by a level's last few hundred ticks in a fixed ring buffer. Recording a tick never allocates
+// or locks, so this can stay enabled at all times. Percentiles are only computed when they are requested.
+public class LevelMetrics {
+
+    public static final int SAMPLES = 200;
+
+    private final ServerLevel level;
+    private final long[] tickTimes = new long[SAMPLES];
+    private int index;
+    private int count;
+    private long lastTickTime;
+
+    public LevelMetrics(ServerLevel level) {
+        this.level = level;
+    }
+
+    public void recordTick(long nanos) {
+
+        tickTimes[index] = nanos;
+        index = (index + 1) % SAMPLES;
+        if(count < SAMPLES) count++;
+
+        lastTickTime = nanos;
+    }
+
+    public long getLastTickTime() {
+        return lastTickTime;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    // Returns the given percentile (0-100) of recent tick times, in nanoseconds
+    public long getTickTimePercentile(double percentile) {
+
+        int samples = count;
+        if(samples == 0) return 0L;
+
+        long[] sorted = Arrays.copyOf(tickTimes, samples);
+        Arrays.sort(sorted);
+
+        int rank = (int) Math.ceil(percentile / 100.0 * samples) - 1;
+        return sorted[Math.max(0, Math.min(samples - 1, rank))];
+    }
+
+    public double getAverageTickTime() {
+
+        int samples = count;
+        if(samples == 0) return 0.0;
+
+        long total = 0L;
+        for(int i = 0 ; i < samples ; i++) {
+            total += tickTimes[i];
+        }
+        return (double) total / samples;
+    }
+
+    public int getLoadedChunks() {
+        return level.getChunkSource().getLoadedChunksCount();
+    }
+
+    public int getTickingEntities() {
+        return ((AccessorEntityTickList) ((AccessorServerLevel) level).getEntityTickList()).getActive().size();
+    }
+
+    public int getBlockEntityTickers() {
+        return ((AccessorLevel) level).getBlockEntityTickers().size();
+    }
+
+    // The number of chunks waiting to be written to region files
+    public int getPendingChunkIO() {
+
+        ChunkMap chunkMap = level.getChunkSource().chunkMap;
+        IOWorker worker = ((AccessorChunkStorage) chunkMap).getWorker();
+        return worker == null ? 0 : ((AccessorIOWorker) worker).getPendingWrites().size();
+    }
+
+}
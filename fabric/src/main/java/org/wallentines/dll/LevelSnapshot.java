@@ -0,0 +1,181 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.SharedConstants;
+import net.minecraft.Util;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.slf4j.Logger;
+import org.wallentines.dll.mixin.AccessorChunkMap;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// A compressed archive of every loaded chunk, their entities and the saved data of a context's levels. The archive
+// is a deflated stream of NBT records, so restoring it only costs time in proportion to its own size.
+public class LevelSnapshot {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int BATCH_SIZE = 64;
+
+    // Serializes the levels on the server thread, then compresses and writes the archive in the background
+    public static CompletableFuture<Void> capture(MinecraftServer server, DynamicLevelContext context, Path file) {
+
+        return server.submit(() -> collect(context)).thenAcceptAsync(records -> {
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Path parent = file.toAbsolutePath().getParent();
+                if(parent != null) Files.createDirectories(parent);
+
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try(DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(Files.newOutputStream(tmp), deflater, 65536)))) {
+                    for(CompoundTag record : records) {
+                        NbtIo.write(record, dos);
+                    }
+                } finally {
+                    deflater.end();
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+        }, Util.ioPool());
+    }
+
+    // Decompresses the archive in the background and applies it to the context's levels on the server thread, a batch
+    // of records at a time
+    public static CompletableFuture<Void> restore(MinecraftServer server, DynamicLevelContext context, Path file) {
+
+        return CompletableFuture.supplyAsync(() -> {
+
+            List<CompletableFuture<Void>> batches = new ArrayList<>();
+            Inflater inflater = new Inflater();
+            try(DataInputStream dis = new DataInputStream(new BufferedInputStream(new InflaterInputStream(Files.newInputStream(file), inflater, 65536)))) {
+
+                CompoundTag header = NbtIo.read(dis);
+                checkHeader(header);
+
+                int count = header.getInt("Records");
+                List<CompoundTag> batch = new ArrayList<>();
+                for(int i = 0 ; i < count ; i++) {
+
+                    batch.add(NbtIo.read(dis));
+                    if(batch.size() == BATCH_SIZE || i == count - 1) {
+
+                        List<CompoundTag> toApply = batch;
+                        batches.add(server.submit(() -> toApply.forEach(record -> apply(context, record))));
+                        batch = new ArrayList<>();
+                    }
+                }
+
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                inflater.end();
+            }
+
+            return batches;
+
+        }, Util.ioPool()).thenCompose(batches -> CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)));
+    }
+
+    private static List<CompoundTag> collect(DynamicLevelContext context) {
+
+        List<CompoundTag> records = new ArrayList<>();
+        for(ResourceKey<Level> key : context.getLevelKeys()) {
+
+            ServerLevel level = context.getLevel(key);
+            if(level == null) continue;
+
+            String dimension = key.location().toString();
+            for(ChunkHolder holder : ((AccessorChunkMap) level.getChunkSource().chunkMap).callGetChunks()) {
+
+                LevelChunk chunk = holder.getFullChunk();
+                if(chunk == null) continue;
+
+                CompoundTag record = new CompoundTag();
+                record.putString("Type", "chunk");
+                record.putString("Dimension", dimension);
+                record.put("Chunk", ChunkRestorer.saveChunk(level, chunk));
+                record.put("Entities", ChunkRestorer.saveEntities(level, chunk.getPos()));
+                records.add(record);
+            }
+
+            for(Map.Entry<String, CompoundTag> entry : ((SnapshotDataStorage) level.getDataStorage()).captureData().entrySet()) {
+
+                CompoundTag record = new CompoundTag();
+                record.putString("Type", "data");
+                record.putString("Dimension", dimension);
+                record.putString("Id", entry.getKey());
+                record.put("Data", entry.getValue());
+                records.add(record);
+            }
+        }
+
+        CompoundTag header = new CompoundTag();
+        header.putString("Type", "header");
+        header.putInt("Version", FORMAT_VERSION);
+        header.putInt("DataVersion", SharedConstants.getCurrentVersion().getDataVersion().getVersion());
+        header.putInt("Records", records.size());
+        records.add(0, header);
+
+        return records;
+    }
+
+    private static void checkHeader(CompoundTag header) throws IOException {
+
+        if(!header.getString("Type").equals("header") || header.getInt("Version") != FORMAT_VERSION) {
+            throw new IOException("Unsupported level snapshot format!");
+        }
+
+        // Snapshots are meant for quick resets, so they are not upgraded between game versions
+        int dataVersion = SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        if(header.getInt("DataVersion") != dataVersion) {
+            throw new IOException("Level snapshot was created with data version " + header.getInt("DataVersion") + ", but the server uses " + dataVersion + "!");
+        }
+    }
+
+    private static void apply(DynamicLevelContext context, CompoundTag record) {
+
+        ResourceKey<Level> key = ResourceKey.create(Registries.DIMENSION, new ResourceLocation(record.getString("Dimension")));
+        ServerLevel level = context.getLevel(key);
+        if(level == null) {
+            LOGGER.warn("Unable to restore snapshot data for unloaded dimension " + key.location() + "!");
+            return;
+        }
+
+        switch (record.getString("Type")) {
+            case "chunk" -> {
+                CompoundTag chunk = record.getCompound("Chunk");
+                ChunkPos pos = new ChunkPos(chunk.getInt("xPos"), chunk.getInt("zPos"));
+                ChunkRestorer.restoreChunk(level, pos, chunk, record.getCompound("Entities"));
+            }
+            case "data" -> ((SnapshotDataStorage) level.getDataStorage()).restoreData(record.getString("Id"), record.getCompound("Data"));
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.wallentines.dll;
+
+import jdk.jfr.*;
+
+// Emitted for every timed phase of a dynamic level load, unload, save or delete. Enable it in a JFR recording with
+// the event name below to see where a slow operation spent its time.
+@Name("org.wallentines.dll.LoadPhase")
+@Label("Dynamic Level Phase")
+@Category({"Dynamic Level Loader"})
+@StackTrace(false)
+public class LoadPhaseEvent extends Event {
+
+    @Label("Level")
+    String level;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Phase")
+    String phase;
+
+}
@@ -0,0 +1,134 @@
+package org.wallentines.dll;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Times the phases of dynamic level operations. Each finished phase is committed as a LoadPhaseEvent, if JFR is
+// recording it, and added to a histogram kept for the lifetime of the server.
+public final class LoadPhases {
+
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    public static Timer start(String levelName, Operation operation, String phase) {
+        return new Timer(levelName, operation, phase);
+    }
+
+    // Returns all histograms, keyed by "operation/phase"
+    public static Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    public static void reset() {
+        HISTOGRAMS.clear();
+    }
+
+    public enum Operation {
+        LOAD,
+        UNLOAD,
+        SAVE,
+        DELETE;
+
+        public String getId() {
+            return name().toLowerCase();
+        }
+    }
+
+    public static class Timer {
+
+        private final LoadPhaseEvent event = new LoadPhaseEvent();
+        private final Operation operation;
+        private final String phase;
+        private final long start;
+        private boolean ended;
+
+        private Timer(String levelName, Operation operation, String phase) {
+
+            this.operation = operation;
+            this.phase = phase;
+
+            event.level = levelName;
+            event.operation = operation.getId();
+            event.phase = phase;
+            event.begin();
+
+            this.start = System.nanoTime();
+        }
+
+        public void end() {
+
+            if(ended) return;
+            ended = true;
+
+            long elapsed = System.nanoTime() - start;
+
+            event.end();
+            if(event.shouldCommit()) event.commit();
+
+            HISTOGRAMS.computeIfAbsent(operation.getId() + "/" + phase, k -> new Histogram()).record(elapsed);
+        }
+    }
+
+    // Counts durations in power-of-two millisecond buckets, from under 1ms up to 32s or more
+    public static class Histogram {
+
+        public static final int BUCKETS = 17;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        private void record(long nanos) {
+
+            long millis = nanos / 1000000L;
+            int bucket = millis == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getAverageMillis() {
+            long samples = count.get();
+            return samples == 0 ? 0.0 : total.get() / 1.0E6 / samples;
+        }
+
+        public double getMaxMillis() {
+            return max.get() / 1.0E6;
+        }
+
+        // The number of samples which took less than getBucketLimit(bucket) milliseconds, but not less than the limit
+        // of the bucket before it
+        public long getBucket(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        public static long getBucketLimit(int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        // Returns the upper limit of the bucket containing the given percentile, in milliseconds
+        public long getPercentileLimit(double percentile) {
+
+            long samples = count.get();
+            if(samples == 0) return 0L;
+
+            long target = (long) Math.ceil(percentile / 100.0 * samples);
+            long seen = 0L;
+            for(int i = 0 ; i < BUCKETS ; i++) {
+                seen += buckets.get(i);
+                if(seen >= target) return getBucketLimit(i);
+            }
+            return getBucketLimit(BUCKETS - 1);
+        }
+    }
+
+}
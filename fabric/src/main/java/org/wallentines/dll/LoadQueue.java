@@ -0,0 +1,163 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.server.MinecraftServer;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+// Limits how many contexts may load at once. Waiting loads are started in order of priority, then submission, and
+// are held back entirely while the server is running slower than the configured tick time.
+public class LoadQueue {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingInt(Entry::priority).reversed().thenComparingLong(Entry::sequence));
+
+    private int maxConcurrentLoads = 4;
+    private int maxQueueSize = Integer.MAX_VALUE;
+    private float maxTickTime = 0.0f;
+    private boolean shedWhenOverloaded = false;
+
+    private int activeLoads;
+    private long sequence;
+
+    public synchronized int getActiveLoads() {
+        return activeLoads;
+    }
+
+    public synchronized int getQueuedLoads() {
+        return queue.size();
+    }
+
+    public synchronized void setMaxConcurrentLoads(int maxConcurrentLoads) {
+        this.maxConcurrentLoads = Math.max(1, maxConcurrentLoads);
+    }
+
+    public synchronized void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    // Loads will not be started while the average tick time is above this many milliseconds. Zero disables the check
+    public synchronized void setMaxTickTime(float maxTickTime) {
+        this.maxTickTime = maxTickTime;
+    }
+
+    // Whether loads submitted while the server is overloaded should fail immediately rather than wait
+    public synchronized void setShedWhenOverloaded(boolean shedWhenOverloaded) {
+        this.shedWhenOverloaded = shedWhenOverloaded;
+    }
+
+    public void submit(MinecraftServer server, int priority, CompletableFuture<?> result, Runnable start, IntConsumer onQueued) {
+
+        Entry entry;
+        synchronized (this) {
+
+            if(shedWhenOverloaded && isOverloaded(server)) {
+                result.completeExceptionally(new RejectedExecutionException("The server is too busy to load a dynamic level!"));
+                return;
+            }
+            if(queue.size() >= maxQueueSize) {
+                result.completeExceptionally(new RejectedExecutionException("Too many dynamic levels are waiting to load!"));
+                return;
+            }
+
+            entry = new Entry(priority, sequence++, start, onQueued, result);
+            queue.add(entry);
+        }
+
+        result.whenComplete((value, ex) -> {
+            synchronized (this) {
+                if(entry.started) {
+                    activeLoads--;
+                } else {
+                    queue.remove(entry);
+                }
+            }
+            poll(server);
+        });
+
+        poll(server);
+    }
+
+    public void poll(MinecraftServer server) {
+
+        List<Entry> toStart = new ArrayList<>();
+        List<Entry> waiting;
+
+        synchronized (this) {
+
+            while(activeLoads < maxConcurrentLoads && !queue.isEmpty() && !isOverloaded(server)) {
+
+                Entry entry = queue.poll();
+                if(entry.result.isDone()) continue;
+
+                entry.started = true;
+                activeLoads++;
+                toStart.add(entry);
+            }
+
+            waiting = new ArrayList<>(queue);
+        }
+
+        for(Entry entry : toStart) {
+            server.execute(entry.start);
+        }
+
+        // Tell waiting loads about their position whenever it changes
+        waiting.sort(queue.comparator());
+        for(int i = 0 ; i < waiting.size() ; i++) {
+
+            Entry entry = waiting.get(i);
+            int position = i + 1;
+            if(entry.lastPosition != position) {
+                entry.lastPosition = position;
+                try {
+                    entry.onQueued.accept(position);
+                } catch (Exception ex) {
+                    LOGGER.warn("An exception occurred while sending a dynamic level queue position callback!");
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private boolean isOverloaded(MinecraftServer server) {
+        return maxTickTime > 0.0f && server.getAverageTickTime() > maxTickTime;
+    }
+
+    private static class Entry {
+
+        private final int priority;
+        private final long sequence;
+        private final Runnable start;
+        private final IntConsumer onQueued;
+        private final CompletableFuture<?> result;
+
+        private volatile boolean started;
+        private volatile int lastPosition;
+
+        private Entry(int priority, long sequence, Runnable start, IntConsumer onQueued, CompletableFuture<?> result) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.start = start;
+            this.onQueued = onQueued;
+            this.result = result;
+        }
+
+        public int priority() {
+            return priority;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.wallentines.dll;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StreamTagVisitor;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Worlds in an in-memory storage keep their chunk, entity and POI data in heap buffers rather than region files.
+// If the world has a template, chunks which were never written are read from the template's region files instead.
+public class MemoryStorage {
+
+    private static final Map<Path, Optional<Path>> ROOTS = new ConcurrentHashMap<>();
+
+    public static void registerRoot(Path root, @Nullable Path template) {
+        ROOTS.put(root.toAbsolutePath().normalize(), Optional.ofNullable(template).map(p -> p.toAbsolutePath().normalize()));
+    }
+
+    public static void unregisterRoot(Path root) {
+        ROOTS.remove(root.toAbsolutePath().normalize());
+    }
+
+    public static boolean isInMemory(Path path) {
+
+        Path normalized = path.toAbsolutePath().normalize();
+        for(Path root : ROOTS.keySet()) {
+            if(normalized.startsWith(root)) return true;
+        }
+        return false;
+    }
+
+    // Returns a chunk store for the given region folder, or null if the folder does not belong to an in-memory world
+    @Nullable
+    public static ChunkStore createChunkStore(Path folder) {
+
+        Path normalized = folder.toAbsolutePath().normalize();
+        for(Map.Entry<Path, Optional<Path>> entry : ROOTS.entrySet()) {
+            if(normalized.startsWith(entry.getKey())) {
+
+                Path template = entry.getValue().map(p -> p.resolve(entry.getKey().relativize(normalized).toString())).orElse(null);
+                return new ChunkStore(template);
+            }
+        }
+        return null;
+    }
+
+    public static class ChunkStore {
+
+        // Marks a chunk which was deleted, so the template copy is not read instead
+        private static final byte[] REMOVED = new byte[0];
+
+        private final Long2ObjectMap<byte[]> chunks = new Long2ObjectOpenHashMap<>();
+        private final TemplateChunkReader template;
+        private long size;
+
+        private ChunkStore(@Nullable Path templateFolder) {
+            this.template = templateFolder == null ? null : TemplateChunkReader.acquireShared(templateFolder);
+        }
+
+        public synchronized long getSize() {
+            return size;
+        }
+
+        @Nullable
+        public synchronized CompoundTag read(ChunkPos pos) throws IOException {
+
+            byte[] data = chunks.get(pos.toLong());
+            if(data == REMOVED) return null;
+            if(data != null) {
+                return NbtIo.read(new DataInputStream(new ByteArrayInputStream(data)));
+            }
+
+            return template == null ? null : template.read(pos);
+        }
+
+        public synchronized void scan(ChunkPos pos, StreamTagVisitor visitor) throws IOException {
+
+            byte[] data = chunks.get(pos.toLong());
+            if(data == REMOVED) return;
+            if(data != null) {
+                NbtIo.parse(new DataInputStream(new ByteArrayInputStream(data)), visitor);
+                return;
+            }
+
+            if(template != null) template.scan(pos, visitor);
+        }
+
+        public synchronized void write(ChunkPos pos, @Nullable CompoundTag tag) throws IOException {
+
+            byte[] data = REMOVED;
+            if(tag != null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                NbtIo.write(tag, new DataOutputStream(bos));
+                data = bos.toByteArray();
+            }
+
+            byte[] old = chunks.put(pos.toLong(), data);
+            size += data.length - (old == null ? 0 : old.length);
+        }
+
+        // Frees all chunk data and releases the template reader
+        public synchronized void close() throws IOException {
+
+            chunks.clear();
+            size = 0;
+
+            if(template != null) template.release();
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.wallentines.dll;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+
+import java.util.Collection;
+
+// The area of a dimension which is kept on disk. Chunks outside it may be loaded and generated as usual, but they are
+// never saved, and they can be stripped from region files when the level is unloaded.
+public final class PersistenceBounds {
+
+    private final int minX;
+    private final int minZ;
+    private final int maxX;
+    private final int maxZ;
+    private final LongSet chunks;
+
+    private PersistenceBounds(int minX, int minZ, int maxX, int maxZ, LongSet chunks) {
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+        this.chunks = chunks;
+    }
+
+    public boolean contains(int chunkX, int chunkZ) {
+
+        if(chunkX < minX || chunkX > maxX || chunkZ < minZ || chunkZ > maxZ) return false;
+        return chunks == null || chunks.contains(ChunkPos.asLong(chunkX, chunkZ));
+    }
+
+    public boolean contains(long chunkPos) {
+        return contains(ChunkPos.getX(chunkPos), ChunkPos.getZ(chunkPos));
+    }
+
+    // Whether any chunk in the given region may be kept
+    public boolean intersectsRegion(int regionX, int regionZ) {
+
+        int x = regionX << 5;
+        int z = regionZ << 5;
+        if(x + 31 < minX || x > maxX || z + 31 < minZ || z > maxZ) return false;
+        if(chunks == null) return true;
+
+        for(long chunk : chunks) {
+            if(ChunkPos.getX(chunk) >> 5 == regionX && ChunkPos.getZ(chunk) >> 5 == regionZ) return true;
+        }
+        return false;
+    }
+
+    // Every chunk between the two corners, inclusive
+    public static PersistenceBounds chunks(ChunkPos first, ChunkPos second) {
+
+        return new PersistenceBounds(Math.min(first.x, second.x), Math.min(first.z, second.z),
+                Math.max(first.x, second.x), Math.max(first.z, second.z), null);
+    }
+
+    // Every chunk which contains part of the box between the two corners
+    public static PersistenceBounds blocks(BlockPos first, BlockPos second) {
+        return chunks(new ChunkPos(first), new ChunkPos(second));
+    }
+
+    // Only the given chunks
+    public static PersistenceBounds whitelist(Collection<ChunkPos> chunks) {
+
+        if(chunks.isEmpty()) throw new IllegalArgumentException("A chunk whitelist must contain at least one chunk!");
+
+        LongSet set = new LongOpenHashSet();
+        int minX = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+        for(ChunkPos pos : chunks) {
+            set.add(pos.toLong());
+            minX = Math.min(minX, pos.x);
+            minZ = Math.min(minZ, pos.z);
+            maxX = Math.max(maxX, pos.x);
+            maxZ = Math.max(maxZ, pos.z);
+        }
+
+        return new PersistenceBounds(minX, minZ, maxX, maxZ, LongSets.unmodifiable(set));
+    }
+
+    @Override
+    public String toString() {
+        return chunks == null
+                ? "PersistenceBounds(" + minX + ", " + minZ + " to " + maxX + ", " + maxZ + ")"
+                : "PersistenceBounds(" + chunks.size() + " chunks)";
+    }
+
+}
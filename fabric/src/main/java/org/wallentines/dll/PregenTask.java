@@ -0,0 +1,113 @@
+package org.wallentines.dll;
+
+import com.mojang.datafixers.util.Either;
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ChunkStatus;
+
+import java.util.Comparator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PregenTask {
+
+    public static final TicketType<ChunkPos> TICKET = TicketType.create("dynamic_pregen", Comparator.comparingLong(ChunkPos::toLong));
+
+    private final ServerChunkCache chunkSource;
+    private final ChunkPos center;
+    private final int radius;
+    private final int total;
+    private final boolean addTicket;
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    public PregenTask(ServerChunkCache chunkSource, ChunkPos center, int radius, boolean addTicket) {
+        this.chunkSource = chunkSource;
+        this.center = center;
+        this.radius = Math.max(0, radius);
+        this.addTicket = addTicket;
+
+        int diameter = (2 * this.radius) + 1;
+        this.total = diameter * diameter;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getGenerated() {
+        return generated.get();
+    }
+
+    public float getProgress() {
+        return Math.min(1.0f, (float) generated.get() / (float) total);
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    // Requests a FULL status future for every chunk in the area. Requests are queued on the server thread and skipped
+    // if the task is cancelled before they run. Chunks which were already requested stop generating once the ticket
+    // holding them is removed. The returned future completes as soon as the last chunk finishes.
+    public CompletableFuture<Void> start(Runnable onChunkGenerated) {
+
+        // Keeps the area loaded while it generates. Levels which already hold a start ticket around the area do not
+        // need it. The ticket is removed once pregeneration finishes, fails or is cancelled, so the level is not kept
+        // loaded and ticking afterwards
+        if(addTicket) {
+            chunkSource.getLevel().getServer().execute(() -> chunkSource.addRegionTicket(TICKET, center, radius + 1, center));
+            future.whenComplete((v, ex) -> chunkSource.getLevel().getServer().execute(() ->
+                    chunkSource.removeRegionTicket(TICKET, center, radius + 1, center)));
+        }
+
+        for(int x = -radius ; x <= radius ; x++) {
+            for(int z = -radius ; z <= radius ; z++) {
+
+                int chunkX = center.x + x;
+                int chunkZ = center.z + z;
+
+                CompletableFuture.supplyAsync(() -> future.isDone() ? null : chunkSource.getChunkFuture(chunkX, chunkZ, ChunkStatus.FULL, true),
+                        chunkSource.getLevel().getServer()).thenCompose(f -> f == null ? CompletableFuture.<Either<ChunkAccess, ChunkHolder.ChunkLoadingFailure>>completedFuture(null) : f).whenComplete((either, ex) -> {
+
+                    // Cancelled, or already failed
+                    if(future.isDone()) return;
+
+                    if(ex != null) {
+                        future.completeExceptionally(ex);
+                        return;
+                    }
+
+                    if(either.right().isPresent()) {
+                        future.completeExceptionally(new IllegalStateException("Unable to generate chunk! " + either.right().get()));
+                        return;
+                    }
+
+                    int count = generated.incrementAndGet();
+                    try {
+                        onChunkGenerated.run();
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+
+                    if(count == total) {
+                        future.complete(null);
+                    }
+                });
+            }
+        }
+
+        return future;
+    }
+
+    public void cancel() {
+        future.completeExceptionally(new CancellationException("Pregeneration was cancelled"));
+    }
+
+}
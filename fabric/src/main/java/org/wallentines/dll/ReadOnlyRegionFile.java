@@ -0,0 +1,138 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.RegionFileVersion;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A region file opened for reading only. Unlike RegionFile, it never creates, pads or writes to the file, so it is
+// safe to use on template files and on hard links to them. The header is read once when the file is opened, and
+// chunks are then read with positional reads, so one file can be read from many threads at once.
+public class ReadOnlyRegionFile implements AutoCloseable {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int EXTERNAL_FLAG = 128;
+
+    private final Path path;
+    private final Path externalFolder;
+    private final FileChannel channel;
+    private final int[] offsets = new int[1024];
+
+    public ReadOnlyRegionFile(Path path, Path externalFolder) throws IOException {
+
+        this.path = path;
+        this.externalFolder = externalFolder;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        // A truncated header is treated as empty past its end, as it would be by RegionFile
+        ByteBuffer header = ByteBuffer.allocate(SECTOR_SIZE);
+        try {
+            readFully(header, 0);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        header.flip();
+        for(int i = 0 ; i < offsets.length && header.remaining() >= 4 ; i++) {
+            offsets[i] = header.getInt();
+        }
+    }
+
+    public boolean hasChunk(ChunkPos pos) {
+        return offsets[getIndex(pos)] != 0;
+    }
+
+    @Nullable
+    public DataInputStream getChunkDataInputStream(ChunkPos pos) throws IOException {
+
+        int offset = offsets[getIndex(pos)];
+        if(offset == 0) return null;
+
+        long start = (long) (offset >> 8) * SECTOR_SIZE;
+        int sectors = offset & 255;
+
+        ByteBuffer head = ByteBuffer.allocate(5);
+        readFully(head, start);
+        head.flip();
+        if(head.remaining() < 5) {
+            LOGGER.error("Chunk {} header is truncated in region file {}", pos, path);
+            return null;
+        }
+
+        int length = head.getInt();
+        byte version = head.get();
+        if(length == 0) {
+            LOGGER.warn("Chunk {} is allocated, but stream is missing in region file {}", pos, path);
+            return null;
+        }
+
+        InputStream in;
+        if((version & EXTERNAL_FLAG) != 0) {
+
+            Path external = externalFolder.resolve("c." + pos.x + "." + pos.z + ".mcc");
+            if(!Files.isRegularFile(external)) {
+                LOGGER.error("External chunk path {} is not a file", external);
+                return null;
+            }
+            in = Files.newInputStream(external);
+            version = (byte) (version & ~EXTERNAL_FLAG);
+
+        } else {
+
+            if(length - 1 > sectors * SECTOR_SIZE - 5) {
+                LOGGER.error("Chunk {} stream is truncated in region file {}", pos, path);
+                return null;
+            }
+
+            ByteBuffer data = ByteBuffer.allocate(length - 1);
+            readFully(data, start + 5);
+            if(data.hasRemaining()) {
+                LOGGER.error("Chunk {} stream is truncated in region file {}", pos, path);
+                return null;
+            }
+            in = new ByteArrayInputStream(data.array());
+        }
+
+        RegionFileVersion compression = RegionFileVersion.fromId(version);
+        if(compression == null) {
+            LOGGER.error("Chunk {} has invalid chunk stream version {} in region file {}", pos, version, path);
+            in.close();
+            return null;
+        }
+
+        return new DataInputStream(compression.wrap(in));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reads until the buffer is full or the end of the file is reached
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0) return;
+            position += read;
+        }
+    }
+
+    private static int getIndex(ChunkPos pos) {
+        return pos.getRegionLocalX() + pos.getRegionLocalZ() * 32;
+    }
+
+}
@@ -0,0 +1,135 @@
+package org.wallentines.dll;
+
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.RegionFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Strips chunks outside a dimension's persistence bounds from its region files. Region files with no chunks left are
+// deleted, and the rest are rewritten to a new file rather than modified in place. This reclaims their space, and
+// it means region files which are still hard links to a template are never changed. Region files are only read
+// through ReadOnlyRegionFile, and regions entirely outside the bounds are deleted without being opened.
+public class RegionTrimmer {
+
+    private static final String[] FOLDERS = { "region", "entities", "poi" };
+
+    // Returns the number of region files deleted or rewritten. The dimension's storage must be closed
+    public static int trim(Path dimensionFolder, PersistenceBounds bounds) throws IOException {
+
+        int changed = 0;
+        for(String name : FOLDERS) {
+
+            Path folder = dimensionFolder.resolve(name);
+            if(!Files.isDirectory(folder)) continue;
+
+            List<Path> files = new ArrayList<>();
+            try(DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "r.*.*.mca")) {
+                stream.forEach(files::add);
+            }
+
+            for(Path file : files) {
+                if(trimRegion(folder, file, bounds)) changed++;
+            }
+
+            deleteExternalChunks(folder, bounds);
+        }
+
+        return changed;
+    }
+
+    private static boolean trimRegion(Path folder, Path file, PersistenceBounds bounds) throws IOException {
+
+        String[] parts = file.getFileName().toString().split("\\.");
+        int regionX;
+        int regionZ;
+        try {
+            regionX = Integer.parseInt(parts[1]);
+            regionZ = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+
+        if(!bounds.intersectsRegion(regionX, regionZ)) {
+            Files.delete(file);
+            return true;
+        }
+
+        List<ChunkPos> kept = new ArrayList<>();
+        int removed = 0;
+        Path tmp = null;
+
+        try(ReadOnlyRegionFile in = new ReadOnlyRegionFile(file, folder)) {
+            for(int x = 0 ; x < 32 ; x++) {
+                for(int z = 0 ; z < 32 ; z++) {
+
+                    ChunkPos pos = new ChunkPos((regionX << 5) + x, (regionZ << 5) + z);
+                    if(!in.hasChunk(pos)) continue;
+
+                    if(bounds.contains(pos.x, pos.z)) {
+                        kept.add(pos);
+                    } else {
+                        removed++;
+                    }
+                }
+            }
+
+            // Chunk data is copied without being parsed
+            if(removed > 0 && !kept.isEmpty()) {
+
+                tmp = file.resolveSibling(file.getFileName() + ".trim");
+                Files.deleteIfExists(tmp);
+                try(RegionFile out = new RegionFile(tmp, folder, false)) {
+                    for(ChunkPos pos : kept) {
+                        try(DataInputStream dis = in.getChunkDataInputStream(pos)) {
+                            if(dis == null) continue;
+                            try(DataOutputStream dos = out.getChunkDataOutputStream(pos)) {
+                                dis.transferTo(dos);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if(kept.isEmpty()) {
+            Files.delete(file);
+            return true;
+        }
+        if(tmp != null) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        return false;
+    }
+
+    // Chunks too large for their region file are stored in c.x.z.mcc files next to it. Those which belong to removed
+    // chunks would otherwise be left behind
+    private static void deleteExternalChunks(Path folder, PersistenceBounds bounds) throws IOException {
+
+        List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "c.*.*.mcc")) {
+            stream.forEach(files::add);
+        }
+
+        for(Path file : files) {
+
+            String[] parts = file.getFileName().toString().split("\\.");
+            try {
+                if(!bounds.contains(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]))) {
+                    Files.delete(file);
+                }
+            } catch (NumberFormatException ex) {
+                // Not an external chunk file
+            }
+        }
+    }
+
+}
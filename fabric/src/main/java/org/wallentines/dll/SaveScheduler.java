@@ -0,0 +1,152 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.ImposterProtoChunk;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.slf4j.Logger;
+import org.wallentines.dll.mixin.AccessorChunkMap;
+import org.wallentines.dll.mixin.AccessorServerLevel;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Spreads the autosaves of dynamic levels over the autosave interval rather than saving every level on the same tick.
+// Each level is given its own tick to start saving, and saves are then carried out a few chunks at a time, never
+// spending more than the configured budget per tick. Manual, forced and unload saves are not affected.
+public class SaveScheduler {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static volatile boolean autosaving;
+
+    private final Map<DynamicLevelContext.DynamicLevel, Task> tasks = new LinkedHashMap<>();
+    private final List<DynamicLevelContext.DynamicLevel> incoming = new ArrayList<>();
+
+    private int spreadTicks = 4500;
+    private float budget = 5.0f;
+
+    // Set by the server while its periodic autosave is running
+    public static void setAutosaving(boolean autosaving) {
+        SaveScheduler.autosaving = autosaving;
+    }
+
+    public static boolean isAutosaving() {
+        return autosaving;
+    }
+
+    // The number of ticks after an autosave over which level saves are started. This should be shorter than the
+    // autosave interval, so each round of saves can finish before the next one begins
+    public synchronized void setSpreadTicks(int spreadTicks) {
+        this.spreadTicks = Math.max(1, spreadTicks);
+    }
+
+    // The number of milliseconds which may be spent on scheduled saves each tick
+    public synchronized void setBudget(float budget) {
+        this.budget = budget;
+    }
+
+    public synchronized int getPendingSaves() {
+        return tasks.size() + incoming.size();
+    }
+
+    public synchronized void schedule(DynamicLevelContext.DynamicLevel level) {
+
+        if(!tasks.containsKey(level) && !incoming.contains(level)) {
+            incoming.add(level);
+        }
+    }
+
+    // Called when a level is saved directly, so it is not saved again
+    public synchronized void cancel(DynamicLevelContext.DynamicLevel level) {
+
+        tasks.remove(level);
+        incoming.remove(level);
+    }
+
+    public synchronized void tick(MinecraftServer server) {
+
+        int tick = server.getTickCount();
+
+        // Levels scheduled during the last autosave are started evenly over the spread. Levels which still had not
+        // finished saving from a previous round keep their place at the front
+        for(int i = 0 ; i < incoming.size() ; i++) {
+            tasks.put(incoming.get(i), new Task(incoming.get(i), tick + (int) ((long) i * spreadTicks / incoming.size())));
+        }
+        incoming.clear();
+
+        if(tasks.isEmpty()) return;
+
+        long deadline = System.nanoTime() + (long) (budget * 1000000.0f);
+        Iterator<Task> it = tasks.values().iterator();
+        while(it.hasNext()) {
+
+            Task task = it.next();
+            if(task.startTick > tick) break;
+
+            // Unloaded levels are saved when they are closed, if they are saved at all
+            try {
+                if(task.level.getContext().getLevel(task.level.dimension()) != task.level || task.save(deadline)) {
+                    it.remove();
+                }
+            } catch (Exception ex) {
+                LOGGER.warn("An exception occurred while autosaving dynamic level " + task.level.dimension().location() + "!");
+                ex.printStackTrace();
+                it.remove();
+            }
+
+            if(System.nanoTime() >= deadline) break;
+        }
+    }
+
+    private static class Task {
+
+        private final DynamicLevelContext.DynamicLevel level;
+        private final int startTick;
+        private Iterator<ChunkHolder> chunks;
+
+        private Task(DynamicLevelContext.DynamicLevel level, int startTick) {
+            this.level = level;
+            this.startTick = startTick;
+        }
+
+        // Saves the level's data, then as many chunks as fit before the deadline, then its entities. Returns true once
+        // the level has been saved completely
+        private boolean save(long deadline) {
+
+            ChunkMap chunkMap = level.getChunkSource().chunkMap;
+            if(chunks == null) {
+
+                ((AccessorServerLevel) level).callSaveLevelData();
+
+                List<ChunkHolder> holders = new ArrayList<>();
+                ((AccessorChunkMap) chunkMap).callGetChunks().forEach(holders::add);
+                chunks = holders.iterator();
+            }
+
+            while(chunks.hasNext()) {
+
+                ChunkHolder holder = chunks.next();
+                if(holder.wasAccessibleSinceLastSave()) {
+
+                    ChunkAccess chunk = holder.getChunkToSave().getNow(null);
+                    if((chunk instanceof ImposterProtoChunk || chunk instanceof LevelChunk) && ((AccessorChunkMap) chunkMap).callSave(chunk)) {
+                        holder.refreshAccessibility();
+                    }
+                }
+
+                if(System.nanoTime() >= deadline) return false;
+            }
+
+            ((AccessorServerLevel) level).getEntityManager().autoSave();
+            return true;
+        }
+    }
+
+}
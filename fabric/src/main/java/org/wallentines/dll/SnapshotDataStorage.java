@@ -0,0 +1,16 @@
+package org.wallentines.dll;
+
+import net.minecraft.nbt.CompoundTag;
+
+import java.util.Map;
+
+// Implemented by DimensionDataStorage through MixinDimensionDataStorage
+public interface SnapshotDataStorage {
+
+    // Returns every loaded saved data entry, in the same format as its file on disk
+    Map<String, CompoundTag> captureData();
+
+    // Drops the loaded entry, so the next lookup loads the given tag instead of reading from disk
+    void restoreData(String id, CompoundTag tag);
+
+}
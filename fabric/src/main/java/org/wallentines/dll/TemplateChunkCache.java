@@ -0,0 +1,111 @@
+package org.wallentines.dll;
+
+import net.minecraft.nbt.CompoundTag;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A process-wide cache of decoded chunk data read from world templates. Templates are never written to, so every
+// instance of a template can be served the same chunks without reading or decompressing them again. Entries are
+// evicted in least recently used order once the cache holds more than the configured number of bytes, measured by the
+// uncompressed size of each chunk.
+public class TemplateChunkCache {
+
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(256, 0.75f, true);
+
+    private static long maxSize = Long.getLong("dll.templateCacheSize", 128L * 1024L * 1024L);
+    private static long size;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+
+    // Returns a copy of the cached chunk, since callers are free to modify the tag they are given
+    @Nullable
+    public static synchronized CompoundTag get(Path folder, long chunkPos) {
+
+        Entry entry = ENTRIES.get(new Key(folder, chunkPos));
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.tag.copy();
+    }
+
+    public static synchronized void put(Path folder, long chunkPos, CompoundTag tag, int bytes) {
+
+        if(bytes > maxSize) return;
+
+        Entry old = ENTRIES.put(new Key(folder, chunkPos), new Entry(tag.copy(), bytes));
+        size += bytes - (old == null ? 0 : old.bytes);
+
+        trim();
+    }
+
+    // Drops every cached chunk from the given template, for use if the template has been changed on disk
+    public static synchronized void invalidate(Path template) {
+
+        Path normalized = template.toAbsolutePath().normalize();
+        Iterator<Map.Entry<Key, Entry>> it = ENTRIES.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if(entry.getKey().folder.startsWith(normalized)) {
+                size -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public static synchronized void clear() {
+        ENTRIES.clear();
+        size = 0;
+    }
+
+    public static synchronized void setMaxSize(long maxSize) {
+        TemplateChunkCache.maxSize = maxSize;
+        trim();
+    }
+
+    public static synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public static synchronized long getSize() {
+        return size;
+    }
+
+    public static synchronized int getChunkCount() {
+        return ENTRIES.size();
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    public static synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static void trim() {
+
+        Iterator<Entry> it = ENTRIES.values().iterator();
+        while(size > maxSize && it.hasNext()) {
+            size -= it.next().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private record Key(Path folder, long chunkPos) { }
+
+    private record Entry(CompoundTag tag, int bytes) { }
+
+}
@@ -0,0 +1,127 @@
+package org.wallentines.dll;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StreamTagVisitor;
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// Reads chunks from one region folder of a world template. Region files are opened read-only as they are needed, so
+// nothing is ever created in or written to the template. Region files are only read with positional reads once they
+// are open, so one reader can serve many threads. Decoded chunks are kept in the TemplateChunkCache, so they are only
+// read from disk once for all readers of a template.
+public class TemplateChunkReader {
+
+    private static final Map<Path, TemplateChunkReader> SHARED = new HashMap<>();
+
+    private final Path folder;
+    private final Long2ObjectMap<ReadOnlyRegionFile> regions = new Long2ObjectOpenHashMap<>();
+    private int references;
+
+    public TemplateChunkReader(Path folder) {
+        this.folder = folder.toAbsolutePath().normalize();
+    }
+
+    // Returns the reader for the given template folder which is shared by everything reading from it, so each
+    // region file is only opened once. Each call must be matched by a call to release()
+    public static TemplateChunkReader acquireShared(Path folder) {
+
+        Path normalized = folder.toAbsolutePath().normalize();
+        synchronized (SHARED) {
+            TemplateChunkReader out = SHARED.computeIfAbsent(normalized, TemplateChunkReader::new);
+            out.references++;
+            return out;
+        }
+    }
+
+    // Closes a shared reader once nothing is using it anymore
+    public void release() throws IOException {
+
+        synchronized (SHARED) {
+            if(--references > 0) return;
+            SHARED.remove(folder, this);
+        }
+        close();
+    }
+
+    @Nullable
+    public CompoundTag read(ChunkPos pos) throws IOException {
+
+        CompoundTag cached = TemplateChunkCache.get(folder, pos.toLong());
+        if(cached != null) return cached;
+
+        byte[] data;
+        try(DataInputStream dis = open(pos)) {
+            if(dis == null) return null;
+            data = dis.readAllBytes();
+        }
+
+        CompoundTag out = NbtIo.read(new DataInputStream(new ByteArrayInputStream(data)));
+        TemplateChunkCache.put(folder, pos.toLong(), out, data.length);
+
+        return out;
+    }
+
+    public void scan(ChunkPos pos, StreamTagVisitor visitor) throws IOException {
+
+        CompoundTag cached = TemplateChunkCache.get(folder, pos.toLong());
+        if(cached != null) {
+            cached.acceptAsRoot(visitor);
+            return;
+        }
+
+        try(DataInputStream dis = open(pos)) {
+            if(dis != null) NbtIo.parse(dis, visitor);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+
+        IOException error = null;
+        for(ReadOnlyRegionFile file : regions.values()) {
+            try {
+                file.close();
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        regions.clear();
+
+        if(error != null) throw error;
+    }
+
+    @Nullable
+    private DataInputStream open(ChunkPos pos) throws IOException {
+
+        ReadOnlyRegionFile file = getRegionFile(pos);
+        return file == null ? null : file.getChunkDataInputStream(pos);
+    }
+
+    @Nullable
+    private synchronized ReadOnlyRegionFile getRegionFile(ChunkPos pos) throws IOException {
+
+        long key = ChunkPos.asLong(pos.getRegionX(), pos.getRegionZ());
+        ReadOnlyRegionFile file = regions.get(key);
+        if(file == null) {
+
+            Path path = folder.resolve("r." + pos.getRegionX() + "." + pos.getRegionZ() + ".mca");
+            if(!Files.exists(path)) return null;
+
+            file = new ReadOnlyRegionFile(path, folder);
+            regions.put(key, file);
+        }
+
+        return file;
+    }
+
+}
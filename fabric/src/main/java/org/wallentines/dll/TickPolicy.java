@@ -0,0 +1,54 @@
+package org.wallentines.dll;
+
+// Determines how often a dynamic level runs its full tick. On skipped ticks, only chunk loading, entity section
+// management and players are ticked, so players can still move around and receive chunks.
+public final class TickPolicy {
+
+    public static final TickPolicy FULL = new TickPolicy(Mode.FULL, 1);
+    public static final TickPolicy PAUSED = new TickPolicy(Mode.PAUSED, 0);
+
+    private final Mode mode;
+    private final int interval;
+
+    private TickPolicy(Mode mode, int interval) {
+        this.mode = mode;
+        this.interval = interval;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    // Whether the level should run a full tick on the given server tick
+    public boolean shouldTick(long tick) {
+        return switch (mode) {
+            case FULL -> true;
+            case THROTTLED -> tick % interval == 0;
+            case PAUSED -> false;
+        };
+    }
+
+    public static TickPolicy everyNth(int interval) {
+
+        if(interval < 1) throw new IllegalArgumentException("Tick interval must be at least 1!");
+        if(interval == 1) return FULL;
+
+        return new TickPolicy(Mode.THROTTLED, interval);
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.THROTTLED ? "THROTTLED(" + interval + ")" : mode.name();
+    }
+
+    public enum Mode {
+        FULL,
+        THROTTLED,
+        PAUSED
+    }
+
+}
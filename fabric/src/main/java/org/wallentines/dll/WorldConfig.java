@@ -23,6 +23,8 @@ import net.minecraft.world.level.storage.WorldData;
 import org.wallentines.dll.mixin.AccessorWorldPreset;
 import org.wallentines.midnightcore.fabric.server.EmptyGenerator;
 
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -31,6 +33,8 @@ import java.util.function.Function;
 public class WorldConfig {
 
     private final Map<ResourceKey<LevelStem>, ResourceKey<Level>> levelKeys;
+    private final Map<ResourceKey<LevelStem>, Integer> pregenRadii;
+    private final Map<ResourceKey<LevelStem>, PersistenceBounds> persistenceBounds;
     private final WorldPreset worldPreset;
     private final String levelName;
 
@@ -43,17 +47,28 @@ public class WorldConfig {
     private final boolean recreateLevelData;
     private final long seed;
     private final int pregenRadius;
+    private final int loadPriority;
+    private final int hibernateAfter;
+    private final int unloadAfter;
+    private final TickPolicy tickPolicy;
 
     private final Difficulty difficulty;
     private final GameType defaultGameMode;
     private final GameRules gameRules;
+    private final Path template;
+    private final boolean sharedTemplate;
+    private final boolean trimOnUnload;
 
-    private WorldConfig(Map<ResourceKey<LevelStem>, ResourceKey<Level>> levelKeys, WorldPreset worldPreset,
+    private WorldConfig(Map<ResourceKey<LevelStem>, ResourceKey<Level>> levelKeys,
+                        Map<ResourceKey<LevelStem>, Integer> pregenRadii, Map<ResourceKey<LevelStem>, PersistenceBounds> persistenceBounds, WorldPreset worldPreset,
                         String levelName, boolean hardcore, boolean generateStructures, boolean bonusChest,
                         boolean autoSave, boolean autoDelete, boolean ignoreSessionLock, boolean recreateLevelData,
-                        long seed, int pregenRadius, Difficulty difficulty, GameType defaultGameMode, GameRules gameRules) {
+                        long seed, int pregenRadius, int loadPriority, int hibernateAfter, int unloadAfter, TickPolicy tickPolicy, Difficulty difficulty, GameType defaultGameMode, GameRules gameRules,
+                        Path template, boolean sharedTemplate, boolean trimOnUnload) {
 
         this.levelKeys = ImmutableMap.copyOf(levelKeys);
+        this.pregenRadii = ImmutableMap.copyOf(pregenRadii);
+        this.persistenceBounds = ImmutableMap.copyOf(persistenceBounds);
         this.worldPreset = worldPreset;
         this.levelName = levelName;
         this.hardcore = hardcore;
@@ -65,15 +80,26 @@ public class WorldConfig {
         this.recreateLevelData = recreateLevelData;
         this.seed = seed;
         this.pregenRadius = pregenRadius;
+        this.loadPriority = loadPriority;
+        this.hibernateAfter = hibernateAfter;
+        this.unloadAfter = unloadAfter;
+        this.tickPolicy = tickPolicy;
         this.difficulty = difficulty;
         this.defaultGameMode = defaultGameMode;
         this.gameRules = gameRules;
+        this.template = template;
+        this.sharedTemplate = sharedTemplate;
+        this.trimOnUnload = trimOnUnload;
     }
 
     public ResourceKey<Level> getDimensionKey(ResourceKey<LevelStem> stemKey) {
         return levelKeys.get(stemKey);
     }
 
+    public Collection<ResourceKey<Level>> getLevelKeys() {
+        return levelKeys.values();
+    }
+
     public WorldPreset getWorldPreset() {
         return worldPreset;
     }
@@ -118,6 +144,31 @@ public class WorldConfig {
         return pregenRadius;
     }
 
+    public int getLoadPriority() {
+        return loadPriority;
+    }
+
+    public int getHibernateAfter() {
+        return hibernateAfter;
+    }
+
+    public int getUnloadAfter() {
+        return unloadAfter;
+    }
+
+    public TickPolicy getTickPolicy() {
+        return tickPolicy;
+    }
+
+    public int getPregenRadius(ResourceKey<LevelStem> stemKey) {
+
+        Integer radius = pregenRadii.get(stemKey);
+        if(radius != null) return radius;
+
+        // Only the root dimension is pregenerated unless configured otherwise
+        return stemKey.equals(LevelStem.OVERWORLD) ? pregenRadius : -1;
+    }
+
     public Difficulty getDifficulty() {
         return difficulty;
     }
@@ -130,6 +181,38 @@ public class WorldConfig {
         return gameRules;
     }
 
+    public Path getTemplate() {
+        return template;
+    }
+
+    public boolean isTemplateShared() {
+        return sharedTemplate;
+    }
+
+    public boolean trimOnUnload() {
+        return trimOnUnload;
+    }
+
+    // Returns the area of the given dimension which is saved, or null if all of it is
+    public PersistenceBounds getPersistenceBounds(ResourceKey<Level> levelKey) {
+
+        for(Map.Entry<ResourceKey<LevelStem>, ResourceKey<Level>> entry : levelKeys.entrySet()) {
+            if(entry.getValue().equals(levelKey)) return persistenceBounds.get(entry.getKey());
+        }
+        return null;
+    }
+
+    public WorldConfig forInstance(String instanceId) {
+
+        Map<ResourceKey<LevelStem>, ResourceKey<Level>> instanceKeys = new HashMap<>();
+        levelKeys.forEach((stem, key) -> instanceKeys.put(stem, ResourceKey.create(Registries.DIMENSION,
+                new ResourceLocation(key.location().getNamespace(), key.location().getPath() + "_" + instanceId))));
+
+        return new WorldConfig(instanceKeys, pregenRadii, persistenceBounds, worldPreset, levelName + "_" + instanceId, hardcore, generateStructures,
+                bonusChest, autoSave, autoDelete, ignoreSessionLock, recreateLevelData, seed, pregenRadius, loadPriority,
+                hibernateAfter, unloadAfter, tickPolicy, difficulty, defaultGameMode, gameRules.copy(), template, sharedTemplate, trimOnUnload);
+    }
+
     public static DimensionBuilder dimension(RegistryAccess.Frozen access, String dimensionKey) {
 
         return new DimensionBuilder(access, ResourceKey.create(Registries.LEVEL_STEM, new ResourceLocation(dimensionKey)));
@@ -165,11 +248,20 @@ public class WorldConfig {
         private boolean recreateLevelData = false;
         private long seed = RandomSource.create().nextLong();
         private int pregenRadius = 10;
+        private int loadPriority = 0;
+        private int hibernateAfter = -1;
+        private int unloadAfter = -1;
+        private TickPolicy tickPolicy = TickPolicy.FULL;
         private Difficulty difficulty = Difficulty.NORMAL;
         private GameType defaultGameType = GameType.SURVIVAL;
         private final GameRules gameRules = new GameRules();
+        private Path template = null;
+        private boolean sharedTemplate = false;
+        private boolean trimOnUnload = false;
         private final HashMap<ResourceKey<LevelStem>, LevelStem> dimensionStems = new HashMap<>();
         private final HashMap<ResourceKey<LevelStem>, ResourceKey<Level>> dimensions = new HashMap<>();
+        private final HashMap<ResourceKey<LevelStem>, Integer> pregenRadii = new HashMap<>();
+        private final HashMap<ResourceKey<LevelStem>, PersistenceBounds> persistenceBounds = new HashMap<>();
 
         private Builder() { }
 
@@ -223,6 +315,52 @@ public class WorldConfig {
             return this;
         }
 
+        public Builder loadPriority(int loadPriority) {
+            this.loadPriority = loadPriority;
+            return this;
+        }
+
+        // Levels with no players stop ticking after this many seconds. Negative values disable hibernation
+        public Builder hibernateAfter(int seconds) {
+            this.hibernateAfter = seconds;
+            return this;
+        }
+
+        // Levels with no players are saved and unloaded after this many seconds. Negative values disable unloading
+        public Builder unloadAfter(int seconds) {
+            this.unloadAfter = seconds;
+            return this;
+        }
+
+        public Builder tickPolicy(TickPolicy tickPolicy) {
+            this.tickPolicy = tickPolicy;
+            return this;
+        }
+
+        public Builder template(Path template) {
+            this.template = template;
+            return this;
+        }
+
+        // A shared template is never copied into its instances. Every instance reads unmodified chunks from the same
+        // template region files, and only the chunks it writes are stored in its own folder. The template must not
+        // change while any instance of it is loaded
+        public Builder sharedTemplate(boolean sharedTemplate) {
+            this.sharedTemplate = sharedTemplate;
+            return this;
+        }
+
+        public Builder persistenceBounds(ResourceKey<LevelStem> dimensionId, PersistenceBounds bounds) {
+            this.persistenceBounds.put(dimensionId, bounds);
+            return this;
+        }
+
+        // Strips chunks outside each dimension's persistence bounds from its region files when it is saved and unloaded
+        public Builder trimOnUnload(boolean trimOnUnload) {
+            this.trimOnUnload = trimOnUnload;
+            return this;
+        }
+
         public Builder difficulty(Difficulty difficulty) {
             this.difficulty = difficulty;
             return this;
@@ -263,6 +401,13 @@ public class WorldConfig {
             dimensions.put(builder.dimensionId, dimensionId);
             dimensionStems.put(builder.dimensionId, new LevelStem(builder.dimensionType, builder.getGenerator()));
 
+            if(builder.pregenRadius != null) {
+                pregenRadii.put(builder.dimensionId, builder.pregenRadius);
+            }
+            if(builder.persistenceBounds != null) {
+                persistenceBounds.put(builder.dimensionId, builder.persistenceBounds);
+            }
+
             return this;
         }
 
@@ -288,9 +433,9 @@ public class WorldConfig {
             if(dimensionStems.isEmpty()) throw new IllegalStateException("Cannot create a world config with no dimensions!");
 
             WorldPreset preset = new WorldPreset(dimensionStems);
-            return new WorldConfig(dimensions, preset, levelName, hardcore, generateStructures, bonusChest, autoSave,
-                    autoDelete, ignoreSessionLock, recreateLevelData, seed, pregenRadius, difficulty, defaultGameType,
-                    gameRules);
+            return new WorldConfig(dimensions, pregenRadii, persistenceBounds, preset, levelName, hardcore, generateStructures, bonusChest, autoSave,
+                    autoDelete, ignoreSessionLock, recreateLevelData, seed, pregenRadius, loadPriority, hibernateAfter, unloadAfter, tickPolicy, difficulty, defaultGameType,
+                    gameRules, template, sharedTemplate, trimOnUnload);
 
         }
 
@@ -303,6 +448,8 @@ public class WorldConfig {
         private final RegistryAccess.Frozen access;
         private Holder<DimensionType> dimensionType;
         private ChunkGenerator generator;
+        private Integer pregenRadius;
+        private PersistenceBounds persistenceBounds;
 
         private DimensionBuilder(RegistryAccess.Frozen access, ResourceKey<LevelStem> dimensionId) {
             this.dimensionId = dimensionId;
@@ -325,6 +472,21 @@ public class WorldConfig {
             return this;
         }
 
+        public DimensionBuilder pregenRadius(int pregenRadius) {
+            this.pregenRadius = pregenRadius;
+            return this;
+        }
+
+        public DimensionBuilder noPregen() {
+            this.pregenRadius = -1;
+            return this;
+        }
+
+        public DimensionBuilder persistenceBounds(PersistenceBounds persistenceBounds) {
+            this.persistenceBounds = persistenceBounds;
+            return this;
+        }
+
         public DimensionBuilder emptyGenerator(ResourceKey<Biome> biome) {
             this.generator = EmptyGenerator.create(biome, access);
             return this;
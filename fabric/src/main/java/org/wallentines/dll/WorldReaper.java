@@ -0,0 +1,94 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Deletes world folders in the background. A folder is first renamed into its storage's trash folder, which is
+// atomic and immediate, and then deleted on a low priority thread. Anything left in the trash when the server stops
+// is deleted when the storage is next created.
+public class WorldReaper {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final DynamicLevelExecutor EXECUTOR = DynamicLevelExecutor.builder()
+            .name("DynamicLevel-Reaper")
+            .threads(1)
+            .priority(Thread.MIN_PRIORITY)
+            .build();
+
+    public static void moveToTrash(Path folder, Path trash) throws IOException {
+
+        if(!Files.exists(folder)) return;
+
+        Files.createDirectories(trash);
+        Path target = trash.resolve(folder.getFileName() + "-" + UUID.randomUUID());
+
+        try {
+            Files.move(folder, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+
+            // The trash should always be on the same volume, but delete in place rather than copying if it is not
+            LOGGER.warn("Unable to move " + folder + " to the trash! Deleting it in place");
+            delete(folder);
+            return;
+        }
+
+        delete(target);
+    }
+
+    // Deletes everything left in the trash, for example because the server stopped before it could be deleted
+    public static void emptyTrash(Path trash) {
+
+        if(!Files.isDirectory(trash)) return;
+
+        try(Stream<Path> stream = Files.list(trash)) {
+            stream.forEach(WorldReaper::delete);
+        } catch (IOException ex) {
+            LOGGER.warn("An exception occurred while emptying the dynamic level trash!");
+            ex.printStackTrace();
+        }
+    }
+
+    public static int getPendingDeletions() {
+        return EXECUTOR.getQueueDepth() + EXECUTOR.getActiveThreads();
+    }
+
+    private static void delete(Path folder) {
+
+        EXECUTOR.execute(() -> {
+            try {
+                deleteRecursively(folder);
+            } catch (IOException ex) {
+                LOGGER.warn("An exception occurred while deleting " + folder + "!");
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private static void deleteRecursively(Path folder) throws IOException {
+
+        if(!Files.exists(folder)) return;
+
+        Files.walkFileTree(folder, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+                if(ex != null) throw ex;
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.wallentines.dll;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class WorldTemplate {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private static final Set<Path> INSTANCE_ROOTS = ConcurrentHashMap.newKeySet();
+    private static final Set<Path> LINKED_FILES = ConcurrentHashMap.newKeySet();
+    private static final Map<Path, Path> SHARED_INSTANCE_ROOTS = new ConcurrentHashMap<>();
+
+    public static void createInstance(Path template, Path instance) throws IOException {
+        createInstance(template, instance, true);
+    }
+
+    // Without region files, only level.dat and other small files are copied. Used by in-memory worlds, which read
+    // their chunks from the template directly
+    public static void createInstance(Path template, Path instance, boolean regionFiles) throws IOException {
+
+        if(!Files.isDirectory(template)) {
+            throw new IOException("Unable to find world template at " + template + "!");
+        }
+
+        Path root = template.toAbsolutePath().normalize();
+        Path out = instance.toAbsolutePath().normalize();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(out.resolve(root.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+
+                String name = file.getFileName().toString();
+                if(name.equals("session.lock")) return FileVisitResult.CONTINUE;
+
+                Path target = out.resolve(root.relativize(file).toString());
+                if(name.endsWith(".mca")) {
+                    if(regionFiles) link(file, target);
+                } else {
+                    Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if(regionFiles) INSTANCE_ROOTS.add(out);
+    }
+
+    public static void registerInstance(Path instance) {
+        INSTANCE_ROOTS.add(instance.toAbsolutePath().normalize());
+    }
+
+    public static void unregisterInstance(Path instance) {
+        INSTANCE_ROOTS.remove(instance.toAbsolutePath().normalize());
+    }
+
+    // Instances of a shared template only hold the chunks they have written. Everything else is read from the
+    // template itself
+    public static void registerSharedInstance(Path instance, Path template) {
+        SHARED_INSTANCE_ROOTS.put(instance.toAbsolutePath().normalize(), template.toAbsolutePath().normalize());
+    }
+
+    public static void unregisterSharedInstance(Path instance) {
+        SHARED_INSTANCE_ROOTS.remove(instance.toAbsolutePath().normalize());
+    }
+
+    // Returns the template folder corresponding to the given folder in a shared template instance, or null if the
+    // folder does not belong to one
+    public static Path getSharedTemplateFolder(Path path) {
+
+        Path normalized = path.toAbsolutePath().normalize();
+        for(Map.Entry<Path, Path> entry : SHARED_INSTANCE_ROOTS.entrySet()) {
+            if(normalized.startsWith(entry.getKey())) {
+                return entry.getValue().resolve(entry.getKey().relativize(normalized).toString());
+            }
+        }
+        return null;
+    }
+
+    public static boolean isInstancePath(Path path) {
+
+        Path normalized = path.toAbsolutePath().normalize();
+        for(Path root : INSTANCE_ROOTS) {
+            if(normalized.startsWith(root)) return true;
+        }
+        return false;
+    }
+
+    // Region files are shared with the template until their first write. A file with more than one link still
+    // belongs to the template, so it is replaced by a private copy before anything is written to it.
+    public static void breakLink(Path file) throws IOException {
+
+        if(!isLinked(file)) return;
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".cow");
+        Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        LINKED_FILES.remove(file.toAbsolutePath().normalize());
+    }
+
+    private static boolean isLinked(Path file) {
+
+        if(!Files.exists(file)) return false;
+        if(LINKED_FILES.contains(file.toAbsolutePath().normalize())) return true;
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink") > 1;
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException ex) {
+            // The link count is unavailable on this file system (e.g. on Windows). The file may have been linked
+            // before a restart, so a private copy is always made before the first write
+            return true;
+        }
+    }
+
+    private static void link(Path file, Path target) throws IOException {
+
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, file);
+            LINKED_FILES.add(target.toAbsolutePath().normalize());
+        } catch (UnsupportedOperationException | FileSystemException ex) {
+            // Hard links are unavailable on this file system, or the template is on a different volume
+            LOGGER.debug("Unable to link region file " + file + ", copying instead");
+            Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+}
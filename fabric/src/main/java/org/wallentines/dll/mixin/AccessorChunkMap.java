@@ -0,0 +1,30 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.server.level.ChunkHolder;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.world.entity.ai.village.poi.PoiManager;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(ChunkMap.class)
+public interface AccessorChunkMap {
+
+    @Invoker("getChunks")
+    Iterable<ChunkHolder> callGetChunks();
+
+    @Invoker("getVisibleChunkIfPresent")
+    ChunkHolder callGetVisibleChunkIfPresent(long pos);
+
+    @Invoker("save")
+    boolean callSave(ChunkAccess chunk);
+
+    // Updates entity tracking. Normally this is only called at the end of ticking chunks
+    @Invoker("tick")
+    void callTick();
+
+    @Accessor("poiManager")
+    PoiManager getPoiManager();
+
+}
@@ -0,0 +1,18 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.chunk.storage.ChunkStorage;
+import net.minecraft.world.level.chunk.storage.IOWorker;
+import net.minecraft.world.level.levelgen.structure.LegacyStructureDataHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(ChunkStorage.class)
+public interface AccessorChunkStorage {
+
+    @Accessor("worker")
+    IOWorker getWorker();
+
+    @Accessor("legacyStructureHandler")
+    LegacyStructureDataHandler getLegacyStructureHandler();
+
+}
@@ -0,0 +1,14 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.border.BorderChangeListener;
+import net.minecraft.world.level.border.WorldBorder;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(BorderChangeListener.DelegateBorderChangeListener.class)
+public interface AccessorDelegateBorderChangeListener {
+
+    @Accessor("worldBorder")
+    WorldBorder getWorldBorder();
+
+}
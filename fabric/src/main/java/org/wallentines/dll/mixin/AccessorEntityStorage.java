@@ -0,0 +1,14 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.chunk.storage.EntityStorage;
+import net.minecraft.world.level.chunk.storage.IOWorker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(EntityStorage.class)
+public interface AccessorEntityStorage {
+
+    @Accessor("worker")
+    IOWorker getWorker();
+
+}
@@ -0,0 +1,15 @@
+package org.wallentines.dll.mixin;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.entity.EntityTickList;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(EntityTickList.class)
+public interface AccessorEntityTickList {
+
+    @Accessor("active")
+    Int2ObjectMap<Entity> getActive();
+
+}
@@ -0,0 +1,16 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.IOWorker;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.Map;
+
+@Mixin(IOWorker.class)
+public interface AccessorIOWorker {
+
+    @Accessor("pendingWrites")
+    Map<ChunkPos, ?> getPendingWrites();
+
+}
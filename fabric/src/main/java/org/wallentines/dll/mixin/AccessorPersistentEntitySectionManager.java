@@ -0,0 +1,14 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.entity.EntityPersistentStorage;
+import net.minecraft.world.level.entity.PersistentEntitySectionManager;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+@Mixin(PersistentEntitySectionManager.class)
+public interface AccessorPersistentEntitySectionManager {
+
+    @Accessor("permanentStorage")
+    EntityPersistentStorage<?> getPermanentStorage();
+
+}
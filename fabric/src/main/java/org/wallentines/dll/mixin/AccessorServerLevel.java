@@ -1,9 +1,13 @@
 package org.wallentines.dll.mixin;
 
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.entity.EntityTickList;
+import net.minecraft.world.level.entity.PersistentEntitySectionManager;
 import net.minecraft.world.level.storage.ServerLevelData;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
+import org.spongepowered.asm.mixin.gen.Invoker;
 
 @Mixin(ServerLevel.class)
 public interface AccessorServerLevel {
@@ -11,4 +15,13 @@ public interface AccessorServerLevel {
     @Accessor("serverLevelData")
     ServerLevelData getServerLevelData();
 
+    @Accessor("entityManager")
+    PersistentEntitySectionManager<Entity> getEntityManager();
+
+    @Accessor("entityTickList")
+    EntityTickList getEntityTickList();
+
+    @Invoker("saveLevelData")
+    void callSaveLevelData();
+
 }
@@ -0,0 +1,16 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.border.BorderChangeListener;
+import net.minecraft.world.level.border.WorldBorder;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.List;
+
+@Mixin(WorldBorder.class)
+public interface AccessorWorldBorder {
+
+    @Accessor("listeners")
+    List<BorderChangeListener> getListeners();
+
+}
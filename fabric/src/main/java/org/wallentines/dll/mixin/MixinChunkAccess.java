@@ -0,0 +1,51 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LevelHeightAccessor;
+import net.minecraft.world.level.biome.BiomeResolver;
+import net.minecraft.world.level.biome.Climate;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.wallentines.dll.DynamicLevelContext;
+
+@Mixin(ChunkAccess.class)
+public class MixinChunkAccess {
+
+    @Shadow @Final
+    protected LevelHeightAccessor levelHeightAccessor;
+
+    @Shadow @Final
+    protected ChunkPos chunkPos;
+
+    // Inhabited time and biomes are saved with the chunk, so changing them means a loaded chunk must be saved again
+    @Inject(method="incrementInhabitedTime", at=@At("HEAD"))
+    private void onIncrementInhabitedTime(long amount, CallbackInfo ci) {
+        markUnsaved();
+    }
+
+    @Inject(method="setInhabitedTime", at=@At("HEAD"))
+    private void onSetInhabitedTime(long time, CallbackInfo ci) {
+        markUnsaved();
+    }
+
+    @Inject(method="fillBiomesFromNoise", at=@At("HEAD"))
+    private void onFillBiomes(BiomeResolver resolver, Climate.Sampler sampler, CallbackInfo ci) {
+        markUnsaved();
+    }
+
+    @Unique
+    private void markUnsaved() {
+
+        if((Object) this instanceof LevelChunk && levelHeightAccessor instanceof DynamicLevelContext.DynamicLevel dl) {
+            dl.markChunkUnsaved(chunkPos.toLong());
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.structure.LegacyStructureDataHandler;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.wallentines.dll.DynamicLevelContext;
+
+@Mixin(ChunkMap.class)
+public class MixinChunkMap {
+
+    @Shadow @Final
+    ServerLevel level;
+
+    // The level whose chunk is being saved, if its write should be tracked
+    @Unique
+    private DynamicLevelContext.DynamicLevel trackedSave;
+
+    // Loaded chunks are flagged as unsaved by bookkeeping even if nothing in them changed. Dynamic levels track real
+    // changes themselves, so chunks which match what is on disk are not serialized or written again
+    @Inject(method="save(Lnet/minecraft/world/level/chunk/ChunkAccess;)Z", at=@At("HEAD"), cancellable = true)
+    private void onSave(ChunkAccess chunk, CallbackInfoReturnable<Boolean> cir) {
+
+        trackedSave = null;
+
+        // Chunks outside the level's persistence bounds are discarded when they unload
+        if(level instanceof DynamicLevelContext.DynamicLevel dl && !dl.isChunkPersistent(chunk.getPos().toLong())) {
+            chunk.setUnsaved(false);
+            cir.setReturnValue(false);
+            return;
+        }
+
+        if(level instanceof DynamicLevelContext.DynamicLevel dl && chunk instanceof LevelChunk) {
+            if(dl.isChunkSaved(chunk.getPos().toLong())) {
+                chunk.setUnsaved(false);
+                cir.setReturnValue(false);
+            } else {
+                trackedSave = dl;
+            }
+        }
+    }
+
+    // The chunk only matches what is on disk once the write has actually succeeded, so it is marked saved when the
+    // IO worker finishes it rather than when it is queued. This does the same as ChunkStorage.write otherwise
+    @Redirect(method="save(Lnet/minecraft/world/level/chunk/ChunkAccess;)Z", at=@At(value="INVOKE", target="Lnet/minecraft/server/level/ChunkMap;write(Lnet/minecraft/world/level/ChunkPos;Lnet/minecraft/nbt/CompoundTag;)V"))
+    private void redirectWrite(ChunkMap instance, ChunkPos pos, CompoundTag tag) {
+
+        DynamicLevelContext.DynamicLevel dl = trackedSave;
+        trackedSave = null;
+        if(dl == null) {
+            instance.write(pos, tag);
+            return;
+        }
+
+        long chunkPos = pos.toLong();
+        int saveId = dl.beginChunkSave(chunkPos);
+        ((AccessorChunkStorage) instance).getWorker().store(pos, tag).thenRun(() -> dl.finishChunkSave(chunkPos, saveId));
+
+        LegacyStructureDataHandler legacy = ((AccessorChunkStorage) instance).getLegacyStructureHandler();
+        if(legacy != null) legacy.removeIndex(chunkPos);
+    }
+
+}
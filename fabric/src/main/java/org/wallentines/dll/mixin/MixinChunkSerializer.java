@@ -0,0 +1,28 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.ai.village.poi.PoiManager;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.ChunkStatus;
+import net.minecraft.world.level.chunk.ProtoChunk;
+import net.minecraft.world.level.chunk.storage.ChunkSerializer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.wallentines.dll.DynamicLevelContext;
+
+@Mixin(ChunkSerializer.class)
+public class MixinChunkSerializer {
+
+    // A fully generated chunk read from storage starts out identical to what is on disk
+    @Inject(method="read", at=@At("RETURN"))
+    private static void onRead(ServerLevel level, PoiManager poiManager, ChunkPos pos, CompoundTag tag, CallbackInfoReturnable<ProtoChunk> cir) {
+
+        if(level instanceof DynamicLevelContext.DynamicLevel dl && ChunkSerializer.getChunkTypeFromTag(tag) == ChunkStatus.ChunkType.LEVELCHUNK) {
+            dl.markChunkSaved(pos.toLong());
+        }
+    }
+
+}
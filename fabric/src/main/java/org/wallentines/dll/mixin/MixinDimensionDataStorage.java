@@ -0,0 +1,147 @@
+package org.wallentines.dll.mixin;
+
+import com.mojang.logging.LogUtils;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.storage.DimensionDataStorage;
+import org.slf4j.Logger;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.wallentines.dll.DynamicLevelStorage;
+import org.wallentines.dll.MemoryStorage;
+import org.wallentines.dll.SnapshotDataStorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Mixin(DimensionDataStorage.class)
+public abstract class MixinDimensionDataStorage implements SnapshotDataStorage {
+
+    @Shadow @Final
+    private File dataFolder;
+
+    @Shadow @Final
+    private Map<String, SavedData> cache;
+
+    @Shadow
+    protected abstract File getDataFile(String id);
+
+    @Unique
+    private static final Logger DLL_LOGGER = LogUtils.getLogger();
+
+    @Unique
+    private final Map<String, CompoundTag> restoredData = new ConcurrentHashMap<>();
+
+    @Unique
+    private final Map<String, byte[]> savedDigests = new HashMap<>();
+
+    @Unique
+    private Boolean dynamic;
+
+    @Inject(method="save", at=@At("HEAD"), cancellable = true)
+    private void onSave(CallbackInfo ci) {
+
+        // Saved data of in-memory worlds stays in the storage's cache for as long as the level is loaded
+        if(MemoryStorage.isInMemory(dataFolder.toPath())) {
+            ci.cancel();
+            return;
+        }
+
+        if(dynamic == null) {
+            Path folder = dataFolder.toPath().toAbsolutePath();
+            dynamic = DynamicLevelStorage.getStorages().stream().anyMatch(storage -> folder.startsWith(storage.getBaseDir().toAbsolutePath()));
+        }
+        if(!dynamic) return;
+        ci.cancel();
+
+        // Many kinds of saved data are marked dirty on a timer whether or not they changed. In dynamic levels, the
+        // write is skipped if the SHA-256 digest of the data matches what was last written to the same file
+        for(Map.Entry<String, SavedData> entry : cache.entrySet()) {
+
+            SavedData data = entry.getValue();
+            if(data == null || !data.isDirty()) continue;
+
+            CompoundTag tag = new CompoundTag();
+            tag.put("data", data.save(new CompoundTag()));
+            NbtUtils.addCurrentDataVersion(tag);
+
+            File file = getDataFile(entry.getKey());
+            try {
+                byte[] digest = digest(tag);
+                if(!Arrays.equals(digest, savedDigests.get(entry.getKey())) || !file.exists()) {
+                    NbtIo.writeCompressed(tag, file);
+                    savedDigests.put(entry.getKey(), digest);
+                }
+            } catch (IOException ex) {
+                DLL_LOGGER.error("Could not save data {}", data, ex);
+            }
+
+            data.setDirty(false);
+        }
+    }
+
+    @Unique
+    private static byte[] digest(CompoundTag tag) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream dos = new DataOutputStream(bytes)) {
+            NbtIo.write(tag, dos);
+        }
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available!", ex);
+        }
+    }
+
+    @Inject(method="readTagFromDisk", at=@At("HEAD"), cancellable = true)
+    private void onRead(String id, int dataVersion, CallbackInfoReturnable<CompoundTag> cir) {
+
+        CompoundTag restored = restoredData.remove(id);
+        if(restored != null) {
+            cir.setReturnValue(restored.copy());
+        }
+    }
+
+    @Override
+    public Map<String, CompoundTag> captureData() {
+
+        Map<String, CompoundTag> out = new HashMap<>();
+        for(Map.Entry<String, SavedData> entry : cache.entrySet()) {
+
+            if(entry.getValue() == null) continue;
+
+            CompoundTag tag = new CompoundTag();
+            tag.put("data", entry.getValue().save(new CompoundTag()));
+            NbtUtils.addCurrentDataVersion(tag);
+
+            out.put(entry.getKey(), tag);
+        }
+        return out;
+    }
+
+    @Override
+    public void restoreData(String id, CompoundTag tag) {
+        cache.remove(id);
+        restoredData.put(id, tag);
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.chunk.storage.EntityStorage;
+import net.minecraft.world.level.entity.ChunkEntities;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.wallentines.dll.DynamicLevelContext;
+
+@Mixin(EntityStorage.class)
+public class MixinEntityStorage {
+
+    @Shadow @Final
+    private ServerLevel level;
+
+    // Entities in chunks outside a dynamic level's persistence bounds are discarded with their chunks
+    @Inject(method="storeEntities", at=@At("HEAD"), cancellable = true)
+    private void onStore(ChunkEntities<Entity> entities, CallbackInfo ci) {
+
+        if(level instanceof DynamicLevelContext.DynamicLevel dl && !dl.isChunkPersistent(entities.getPos().toLong())) {
+            ci.cancel();
+        }
+    }
+
+}
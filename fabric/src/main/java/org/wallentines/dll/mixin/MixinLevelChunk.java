@@ -0,0 +1,30 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.wallentines.dll.DynamicLevelContext;
+
+@Mixin(LevelChunk.class)
+public class MixinLevelChunk {
+
+    @Shadow @Final
+    Level level;
+
+    // Blocks may be changed in the chunk directly without going through the level
+    @Inject(method="setBlockState", at=@At("RETURN"))
+    private void onSetBlockState(BlockPos pos, BlockState state, boolean moved, CallbackInfoReturnable<BlockState> cir) {
+
+        if(cir.getReturnValue() != null && level instanceof DynamicLevelContext.DynamicLevel dl) {
+            dl.markChunkUnsaved(((LevelChunk) (Object) this).getPos().toLong());
+        }
+    }
+
+}
@@ -14,12 +14,13 @@ import java.nio.file.Path;
 @Mixin(LevelStorageSource.LevelStorageAccess.class)
 public class MixinLevelStorageAccess {
 
-    // Create a dummy file lock that always reports as valid in order to allow multiple dynamic levels to be created from the same world folder
+    // Create a dummy file lock that always reports as valid in order to allow multiple dynamic levels to be created from the same world folder.
+    // In-memory worlds never touch their folder, so they do not need a lock either
     @Redirect(method="<init>", at=@At(value="INVOKE", target="Lnet/minecraft/util/DirectoryLock;create(Ljava/nio/file/Path;)Lnet/minecraft/util/DirectoryLock;"))
     private DirectoryLock injected(Path filelock) throws IOException {
 
         LevelStorageSource.LevelStorageAccess acc = (LevelStorageSource.LevelStorageAccess) (Object) this;
-        if(acc instanceof DynamicLevelStorage.DynamicLevelStorageAccess dyn && dyn.getContext().getConfig().ignoreSessionLock()) {
+        if(acc instanceof DynamicLevelStorage.DynamicLevelStorageAccess dyn && (dyn.isInMemory() || dyn.getContext().getConfig().ignoreSessionLock())) {
             return DummyFileLock.createDummyLock();
         }
 
@@ -1,16 +1,54 @@
 package org.wallentines.dll.mixin;
 
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.players.PlayerList;
+import net.minecraft.world.level.Level;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.wallentines.dll.CopyOnWriteMap;
 import org.wallentines.dll.DynamicLevelContext;
+import org.wallentines.dll.DynamicLevelStorage;
+import org.wallentines.dll.SaveScheduler;
+
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 @Mixin(MinecraftServer.class)
 public class MixinMinecraftServer {
 
+    @Shadow @Final @Mutable
+    private Map<ResourceKey<Level>, ServerLevel> levels;
+
+    // Dynamic levels may be added or removed while the tick loop iterates the server's levels
+    @Inject(method="<init>", at=@At("RETURN"))
+    private void onInit(CallbackInfo ci) {
+        levels = new CopyOnWriteMap<>(levels);
+    }
+
+    @Inject(method="tickServer", at=@At("TAIL"))
+    private void onTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        DynamicLevelStorage.tickAll((MinecraftServer) (Object) this);
+    }
+
+    // Dynamic levels defer their part of the periodic autosave to their storage's save scheduler
+    @Inject(method="tickServer", at=@At(value="INVOKE", target="Lnet/minecraft/server/MinecraftServer;saveEverything(ZZZ)Z"))
+    private void beforeAutosave(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        SaveScheduler.setAutosaving(true);
+    }
+
+    @Inject(method="tickServer", at=@At(value="INVOKE", target="Lnet/minecraft/server/MinecraftServer;saveEverything(ZZZ)Z", shift=At.Shift.AFTER))
+    private void afterAutosave(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+        SaveScheduler.setAutosaving(false);
+    }
+
     @Redirect(method="createLevels", at=@At(value="INVOKE", target="Lnet/minecraft/server/players/PlayerList;addWorldborderListener(Lnet/minecraft/server/level/ServerLevel;)V"))
     private void redirectWorldBorder(PlayerList instance, ServerLevel serverLevel) {
         DynamicLevelContext.addWorldBorderListener(serverLevel);
@@ -1,17 +1,32 @@
 package org.wallentines.dll.mixin;
 
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.server.players.PlayerList;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.Vec3;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import org.wallentines.dll.DynamicLevelContext;
+import org.wallentines.dll.DynamicLevelStorage;
+
+import java.util.Optional;
 
 @Mixin(PlayerList.class)
 public class MixinPlayerList {
 
+    @Shadow @Final
+    private MinecraftServer server;
+
     @Redirect(method="sendLevelInfo", at=@At(value="INVOKE", target="Lnet/minecraft/server/MinecraftServer;overworld()Lnet/minecraft/server/level/ServerLevel;"))
     private ServerLevel redirectLevelInfo(MinecraftServer instance, ServerPlayer spl) {
 
@@ -22,4 +37,32 @@ public class MixinPlayerList {
 
         return instance.overworld();
     }
+
+    // A player whose respawn point is in an evicted dynamic level respawns at the server's spawn, then is moved to
+    // their respawn point once the level has loaded again
+    @Inject(method="respawn", at=@At("RETURN"))
+    private void onRespawn(ServerPlayer old, boolean keepEverything, CallbackInfoReturnable<ServerPlayer> cir) {
+
+        ResourceKey<Level> dimension = old.getRespawnDimension();
+        if(server.getLevel(dimension) != null) return;
+
+        DynamicLevelContext ctx = DynamicLevelStorage.findContext(dimension);
+        if(ctx == null) return;
+
+        ServerPlayer player = cir.getReturnValue();
+        BlockPos respawnPos = old.getRespawnPosition();
+        float respawnAngle = old.getRespawnAngle();
+        boolean respawnForced = old.isRespawnForced();
+
+        ctx.ensureLoaded().thenAcceptAsync(root -> {
+
+            ServerLevel level = server.getLevel(dimension);
+            if(level == null || player.hasDisconnected()) return;
+
+            Optional<Vec3> pos = respawnPos == null ? Optional.empty() : Player.findRespawnPositionAndUseSpawnBlock(level, respawnPos, respawnAngle, respawnForced, true);
+            Vec3 target = pos.orElseGet(() -> Vec3.atBottomCenterOf(level.getSharedSpawnPos()));
+
+            player.teleportTo(level, target.x, target.y, target.z, respawnAngle, 0.0f);
+        }, server);
+    }
 }
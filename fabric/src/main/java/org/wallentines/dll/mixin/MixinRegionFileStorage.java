@@ -0,0 +1,220 @@
+package org.wallentines.dll.mixin;
+
+import com.mojang.logging.LogUtils;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.StreamTagVisitor;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.RegionFile;
+import net.minecraft.world.level.chunk.storage.RegionFileStorage;
+import org.slf4j.Logger;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import org.wallentines.dll.MemoryStorage;
+import org.wallentines.dll.TemplateChunkReader;
+import org.wallentines.dll.WorldTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+@Mixin(RegionFileStorage.class)
+public abstract class MixinRegionFileStorage {
+
+    @Unique
+    private static final Logger DLL_LOGGER = LogUtils.getLogger();
+
+    // Chunks removed from a shared template instance, which must not be read from the template again
+    @Unique
+    private static final String REMOVED_CHUNKS_FILE = "removed_chunks.dat";
+
+    @Shadow @Final
+    private Path folder;
+
+    @Shadow @Final
+    private Long2ObjectLinkedOpenHashMap<RegionFile> regionCache;
+
+    @Unique
+    private boolean copyOnWrite;
+
+    @Unique
+    private final LongSet privateRegions = new LongOpenHashSet();
+
+    @Unique
+    private MemoryStorage.ChunkStore memoryStore;
+
+    @Unique
+    private TemplateChunkReader sharedTemplate;
+
+    @Unique
+    private final LongSet overlayRegions = new LongOpenHashSet();
+
+    @Unique
+    private final LongSet removedChunks = new LongOpenHashSet();
+
+    @Unique
+    private boolean removedChunksChanged;
+
+    @Shadow
+    protected abstract RegionFile getRegionFile(ChunkPos chunkPos) throws IOException;
+
+    @Inject(method="<init>", at=@At("RETURN"))
+    private void onInit(Path path, boolean sync, CallbackInfo ci) {
+        copyOnWrite = WorldTemplate.isInstancePath(path);
+        memoryStore = MemoryStorage.createChunkStore(path);
+
+        Path template = WorldTemplate.getSharedTemplateFolder(path);
+        if(template != null) {
+            sharedTemplate = TemplateChunkReader.acquireShared(template);
+            loadRemovedChunks();
+        }
+    }
+
+    @Inject(method="read", at=@At("HEAD"), cancellable = true)
+    private void onRead(ChunkPos chunkPos, CallbackInfoReturnable<CompoundTag> cir) throws IOException {
+        if(memoryStore != null) {
+            cir.setReturnValue(memoryStore.read(chunkPos));
+        } else if(sharedTemplate != null && !hasOverlayChunk(chunkPos)) {
+            cir.setReturnValue(removedChunks.contains(chunkPos.toLong()) ? null : sharedTemplate.read(chunkPos));
+        }
+    }
+
+    @Inject(method="scanChunk", at=@At("HEAD"), cancellable = true)
+    private void onScan(ChunkPos chunkPos, StreamTagVisitor visitor, CallbackInfo ci) throws IOException {
+        if(memoryStore != null) {
+            memoryStore.scan(chunkPos, visitor);
+            ci.cancel();
+        } else if(sharedTemplate != null && !hasOverlayChunk(chunkPos)) {
+            if(!removedChunks.contains(chunkPos.toLong())) sharedTemplate.scan(chunkPos, visitor);
+            ci.cancel();
+        }
+    }
+
+    @Inject(method="flush", at=@At("HEAD"), cancellable = true)
+    private void onFlush(CallbackInfo ci) throws IOException {
+        if(memoryStore != null) {
+            ci.cancel();
+        } else if(sharedTemplate != null) {
+            saveRemovedChunks();
+        }
+    }
+
+    @Inject(method="close", at=@At("HEAD"), cancellable = true)
+    private void onClose(CallbackInfo ci) throws IOException {
+        if(memoryStore != null) {
+            memoryStore.close();
+            ci.cancel();
+        } else if(sharedTemplate != null) {
+            saveRemovedChunks();
+            sharedTemplate.release();
+            sharedTemplate = null;
+        }
+    }
+
+    // Region files of template instances may still be hard links to the template. Give the instance its own copy
+    // of a region file before the first write to it, so the template is never modified
+    @Inject(method="write", at=@At("HEAD"), cancellable = true)
+    private void onWrite(ChunkPos chunkPos, CompoundTag tag, CallbackInfo ci) throws IOException {
+
+        if(memoryStore != null) {
+            memoryStore.write(chunkPos, tag);
+            ci.cancel();
+            return;
+        }
+
+        // Writes to a shared template instance always go to its own region files. A removed chunk must not be read
+        // from the template again
+        if(sharedTemplate != null) {
+
+            long key = ChunkPos.asLong(chunkPos.getRegionX(), chunkPos.getRegionZ());
+            if(tag == null) {
+                if(removedChunks.add(chunkPos.toLong())) removedChunksChanged = true;
+
+                // There is nothing to clear if the instance has no region file here, so do not create one
+                if(!overlayRegions.contains(key) && !Files.exists(folder.resolve("r." + chunkPos.getRegionX() + "." + chunkPos.getRegionZ() + ".mca"))) {
+                    ci.cancel();
+                }
+            } else {
+                if(removedChunks.remove(chunkPos.toLong())) removedChunksChanged = true;
+                overlayRegions.add(key);
+            }
+            return;
+        }
+
+        if(!copyOnWrite) return;
+
+        long key = ChunkPos.asLong(chunkPos.getRegionX(), chunkPos.getRegionZ());
+        if(!privateRegions.add(key)) return;
+
+        RegionFile open = regionCache.remove(key);
+        if(open != null) {
+            open.close();
+        }
+
+        WorldTemplate.breakLink(folder.resolve("r." + chunkPos.getRegionX() + "." + chunkPos.getRegionZ() + ".mca"));
+    }
+
+    // Whether a shared template instance has its own copy of the given chunk. Region files are only opened if they
+    // exist, since opening one would otherwise create it
+    @Unique
+    private boolean hasOverlayChunk(ChunkPos chunkPos) throws IOException {
+
+        long key = ChunkPos.asLong(chunkPos.getRegionX(), chunkPos.getRegionZ());
+        if(!overlayRegions.contains(key)) {
+            if(!Files.exists(folder.resolve("r." + chunkPos.getRegionX() + "." + chunkPos.getRegionZ() + ".mca"))) return false;
+            overlayRegions.add(key);
+        }
+
+        return getRegionFile(chunkPos).hasChunk(chunkPos);
+    }
+
+    @Unique
+    private void loadRemovedChunks() {
+
+        Path file = folder.resolve(REMOVED_CHUNKS_FILE);
+        if(!Files.exists(file)) return;
+
+        try {
+            CompoundTag tag = NbtIo.readCompressed(file.toFile());
+            for(long pos : tag.getLongArray("Chunks")) {
+                removedChunks.add(pos);
+            }
+        } catch (IOException ex) {
+            DLL_LOGGER.warn("Unable to read removed chunks from " + file + "!");
+            ex.printStackTrace();
+        }
+    }
+
+    @Unique
+    private void saveRemovedChunks() throws IOException {
+
+        if(!removedChunksChanged) return;
+
+        Path file = folder.resolve(REMOVED_CHUNKS_FILE);
+        if(removedChunks.isEmpty()) {
+            Files.deleteIfExists(file);
+        } else {
+
+            CompoundTag tag = new CompoundTag();
+            tag.putLongArray("Chunks", removedChunks.toLongArray());
+
+            Files.createDirectories(folder);
+            Path tmp = file.resolveSibling(REMOVED_CHUNKS_FILE + ".tmp");
+            NbtIo.writeCompressed(tag, tmp.toFile());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        removedChunksChanged = false;
+    }
+
+}
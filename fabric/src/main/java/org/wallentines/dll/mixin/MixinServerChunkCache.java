@@ -1,12 +1,15 @@
 package org.wallentines.dll.mixin;
 
+import net.minecraft.core.SectionPos;
 import net.minecraft.server.level.ServerChunkCache;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LightLayer;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.wallentines.dll.DynamicLevelContext;
 
 @Mixin(ServerChunkCache.class)
 public abstract class MixinServerChunkCache {
@@ -14,6 +17,15 @@ public abstract class MixinServerChunkCache {
     @Shadow
     public abstract Level getLevel();
 
+    // Light is saved with the chunk, including light which spread into it from its neighbours
+    @Inject(method="onLightUpdate", at=@At("HEAD"))
+    private void onLightUpdate(LightLayer layer, SectionPos pos, CallbackInfo ci) {
+
+        if(getLevel() instanceof DynamicLevelContext.DynamicLevel dl) {
+            dl.markChunkUnsaved(pos.chunk().toLong());
+        }
+    }
+
     @Inject(method="save", at=@At("HEAD"), cancellable = true)
     private void onSave(boolean b, CallbackInfo ci) {
 
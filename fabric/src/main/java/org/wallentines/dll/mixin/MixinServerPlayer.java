@@ -0,0 +1,37 @@
+package org.wallentines.dll.mixin;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.wallentines.dll.DynamicLevelContext;
+
+@Mixin(ServerPlayer.class)
+public class MixinServerPlayer {
+
+    @Shadow @Final
+    public MinecraftServer server;
+
+    // Teleporting into a level whose context was evicted loads the context again, then finishes the teleport
+    @Inject(method="teleportTo(Lnet/minecraft/server/level/ServerLevel;DDDFF)V", at=@At("HEAD"), cancellable = true)
+    private void onTeleport(ServerLevel level, double x, double y, double z, float yaw, float pitch, CallbackInfo ci) {
+
+        if(!(level instanceof DynamicLevelContext.DynamicLevel dl) || server.getLevel(dl.dimension()) == dl) return;
+        ci.cancel();
+
+        ServerPlayer player = (ServerPlayer) (Object) this;
+        dl.getContext().ensureLoaded().thenAcceptAsync(root -> {
+
+            ServerLevel target = server.getLevel(dl.dimension());
+            if(target != null && !player.hasDisconnected()) {
+                player.teleportTo(target, x, y, z, yaw, pitch);
+            }
+        }, server);
+    }
+
+}
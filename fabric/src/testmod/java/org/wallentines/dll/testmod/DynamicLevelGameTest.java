@@ -0,0 +1,46 @@
+package org.wallentines.dll.testmod;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestAssertException;
+import net.minecraft.gametest.framework.GameTestHelper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Run headlessly with the "Game Test" run configuration. The cycle count, pregen radius and report location can be set
+// with the dll.benchmark.cycles, dll.benchmark.radius and dll.benchmark.report system properties
+public class DynamicLevelGameTest implements FabricGameTest {
+
+    @GameTest(templateName = EMPTY_STRUCTURE, timeoutTicks = 20 * 60 * 30)
+    public void loadUnloadCycles(GameTestHelper helper) {
+
+        int cycles = Integer.getInteger("dll.benchmark.cycles", 20);
+        int radius = Integer.getInteger("dll.benchmark.radius", 4);
+        Path report = Path.of(System.getProperty("dll.benchmark.report", "dll-benchmark.json"));
+
+        LoadBenchmark benchmark = new LoadBenchmark(helper.getLevel().getServer(), Path.of("benchmark"), cycles, radius);
+        CompletableFuture<List<LoadBenchmark.Cycle>> future = benchmark.run();
+
+        helper.startSequence()
+                .thenWaitUntil(() -> {
+                    if(!future.isDone()) throw new GameTestAssertException("Benchmark is still running");
+                })
+                .thenExecute(() -> {
+
+                    // Cycles which finished are reported even if a later one failed
+                    try {
+                        benchmark.writeReport(report);
+                    } catch (IOException ex) {
+                        throw new GameTestAssertException("Unable to write benchmark report: " + ex.getMessage());
+                    }
+
+                    Throwable error = future.handle((v, ex) -> ex).join();
+                    if(error != null) throw new GameTestAssertException("Benchmark failed: " + error);
+                })
+                .thenSucceed();
+    }
+
+}
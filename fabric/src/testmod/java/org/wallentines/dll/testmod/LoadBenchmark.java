@@ -0,0 +1,133 @@
+package org.wallentines.dll.testmod;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.mojang.logging.LogUtils;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.dimension.LevelStem;
+import net.minecraft.world.level.levelgen.presets.WorldPresets;
+import org.slf4j.Logger;
+import org.wallentines.dll.DynamicLevelContext;
+import org.wallentines.dll.DynamicLevelStorage;
+import org.wallentines.dll.WorldConfig;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Creates, pregenerates and deletes dynamic levels in a loop, recording the cost of each cycle. Results are written
+// as JSON so runs from different releases can be compared.
+public class LoadBenchmark {
+
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final MinecraftServer server;
+    private final DynamicLevelStorage storage;
+    private final int cycles;
+    private final int pregenRadius;
+    private final List<Cycle> results = new ArrayList<>();
+
+    public LoadBenchmark(MinecraftServer server, Path worldsPath, int cycles, int pregenRadius) {
+        this.server = server;
+        this.storage = DynamicLevelStorage.create(worldsPath, worldsPath);
+        this.cycles = cycles;
+        this.pregenRadius = pregenRadius;
+    }
+
+    // Must be called on the server thread. The returned future completes on the server thread after the last cycle
+    public CompletableFuture<List<Cycle>> run() {
+
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for(int i = 0 ; i < cycles ; i++) {
+            final int index = i;
+            chain = chain.thenCompose(v -> runCycle(index));
+        }
+
+        return chain.thenApply(v -> results);
+    }
+
+    private CompletableFuture<Void> runCycle(int index) {
+
+        WorldConfig config = WorldConfig.builder()
+                .levelName("benchmark_" + index)
+                .autoDelete(true)
+                .autoSave(false)
+                .pregenRadius(pregenRadius)
+                .addDimension(
+                        new ResourceLocation("dllbench", "cycle_" + index),
+                        WorldConfig.presetDimension(server.registryAccess(), WorldPresets.NORMAL, LevelStem.OVERWORLD)
+                ).build();
+
+        float baselineMspt = server.getAverageTickTime();
+        long start = System.nanoTime();
+
+        DynamicLevelContext ctx = storage.createWorldContext(config);
+        return ctx.loadAllDimensions().thenAccept(level -> {
+
+            long loaded = System.nanoTime();
+            float loadedMspt = server.getAverageTickTime();
+
+            ctx.unloadAndDelete();
+            long unloaded = System.nanoTime();
+
+            System.gc();
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+            Cycle cycle = new Cycle(index, (loaded - start) / 1.0E6, (unloaded - loaded) / 1.0E6, loadedMspt - baselineMspt, heap, getOpenFileDescriptors());
+            results.add(cycle);
+
+            LOGGER.info("Benchmark cycle " + index + ": load " + String.format("%.1f", cycle.loadMillis()) + "ms, unload "
+                    + String.format("%.1f", cycle.unloadMillis()) + "ms, heap " + (heap / 1048576L) + "MiB, open files " + cycle.openFiles());
+        });
+    }
+
+    public void writeReport(Path file) throws IOException {
+
+        JsonObject report = new JsonObject();
+        report.addProperty("timestamp", Instant.now().toString());
+        report.addProperty("minecraftVersion", server.getServerVersion());
+        report.addProperty("cycles", cycles);
+        report.addProperty("pregenRadius", pregenRadius);
+
+        JsonArray arr = new JsonArray();
+        for(Cycle cycle : results) {
+
+            JsonObject obj = new JsonObject();
+            obj.addProperty("cycle", cycle.index());
+            obj.addProperty("loadMillis", cycle.loadMillis());
+            obj.addProperty("unloadMillis", cycle.unloadMillis());
+            obj.addProperty("msptDelta", cycle.msptDelta());
+            obj.addProperty("heapAfterGc", cycle.heapAfterGc());
+            obj.addProperty("openFiles", cycle.openFiles());
+            arr.add(obj);
+        }
+        report.add("results", arr);
+
+        Path parent = file.toAbsolutePath().getParent();
+        if(parent != null) Files.createDirectories(parent);
+        Files.writeString(file, GSON.toJson(report));
+    }
+
+    // Returns -1 on platforms which do not report open file descriptors
+    private static long getOpenFileDescriptors() {
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if(os instanceof com.sun.management.UnixOperatingSystemMXBean unix) {
+            return unix.getOpenFileDescriptorCount();
+        }
+        return -1L;
+    }
+
+    public record Cycle(int index, double loadMillis, double unloadMillis, float msptDelta, long heapAfterGc, long openFiles) { }
+
+}